@@ -0,0 +1,99 @@
+import gov.nasa.jpf.vm.ClassInfo;
+
+import java.io.PrintWriter;
+
+/**
+ * Object allocation counts per SUT class, used by the BudgetChecker for
+ * budget.max_alloc, budget.max_alloc_per_class and the allocation report.
+ *
+ * The counts are kept in a growable long[] indexed by the ClassInfo unique
+ * id, so counting an allocation is an array increment. Allocations are
+ * counted over the whole search, backtracking doesn't take them back.
+ */
+class AllocCounts {
+
+  private static final int INITIAL_SIZE = 256;
+
+  private long[] counts = new long[INITIAL_SIZE];
+  private ClassInfo[] classes = new ClassInfo[INITIAL_SIZE];
+
+  // highest class id seen so far
+  private int maxId = -1;
+
+  private long total;
+
+  /**
+   * Counts one allocation of the given class
+   *
+   * @param ci The class of the new object
+   * @return the allocation count of the class
+   */
+  long increment (ClassInfo ci) {
+    int id = ci.getUniqueId();
+    if (id >= counts.length) {
+      grow(id);
+    }
+    if (classes[id] == null) {
+      classes[id] = ci;
+      if (id > maxId) {
+        maxId = id;
+      }
+    }
+    total++;
+    return ++counts[id];
+  }
+
+  long getTotal () {
+    return total;
+  }
+
+  private void grow (int id) {
+    int size = Math.max(counts.length * 2, id + 1);
+
+    long[] newCounts = new long[size];
+    System.arraycopy(counts, 0, newCounts, 0, counts.length);
+    counts = newCounts;
+
+    ClassInfo[] newClasses = new ClassInfo[size];
+    System.arraycopy(classes, 0, newClasses, 0, classes.length);
+    classes = newClasses;
+  }
+
+  /**
+   * Returns the ids of the n classes with the most allocations, most allocations first
+   */
+  private int[] topClasses (int n) {
+    return TopCounts.select(counts, maxId + 1, n);
+  }
+
+  /**
+   * @return the n classes with the most allocations and their counts, for constraint messages
+   */
+  String getTopClasses (int n) {
+    StringBuilder sb = new StringBuilder();
+    for (int id : topClasses(n)) {
+      if (sb.length() > 0) {
+        sb.append(", ");
+      }
+      sb.append(classes[id].getName()).append(" (").append(counts[id]).append(')');
+    }
+    return sb.toString();
+  }
+
+  /**
+   * Writes the n classes with the most allocations to the report
+   *
+   * @param pw Output of the publisher
+   * @param n Number of classes to list
+   */
+  void publish (PrintWriter pw, int n) {
+    int[] top = topClasses(n);
+
+    pw.println("allocations:        " + total);
+    pw.println("top " + top.length + " classes by allocations:");
+    for (int id : top) {
+      double percent = (total > 0) ? (100.0 * counts[id] / total) : 0;
+      pw.println(String.format("  %12d %5.1f%%  %s", counts[id], percent, classes[id].getName()));
+    }
+  }
+}
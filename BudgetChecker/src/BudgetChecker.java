@@ -19,18 +19,33 @@
 
 import gov.nasa.jpf.Config;
 import gov.nasa.jpf.JPF;
+import gov.nasa.jpf.JPFConfigException;
 import gov.nasa.jpf.ListenerAdapter;
 import gov.nasa.jpf.annotation.JPFOption;
 import gov.nasa.jpf.annotation.JPFOptions;
+import gov.nasa.jpf.report.ConsolePublisher;
 import gov.nasa.jpf.report.Publisher;
+import gov.nasa.jpf.search.DFSearch;
 import gov.nasa.jpf.search.Search;
+import gov.nasa.jpf.util.JPFLogger;
+import gov.nasa.jpf.vm.ChoiceGenerator;
+import gov.nasa.jpf.vm.ClassInfo;
+import gov.nasa.jpf.vm.ElementInfo;
 import gov.nasa.jpf.vm.Instruction;
+import gov.nasa.jpf.vm.MethodInfo;
 import gov.nasa.jpf.vm.ThreadInfo;
 import gov.nasa.jpf.vm.VM;
 
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.management.GarbageCollectorMXBean;
 import java.lang.management.ManagementFactory;
 import java.lang.management.MemoryMXBean;
 import java.lang.management.MemoryUsage;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * Listener that implements various budget constraints
@@ -42,7 +57,72 @@ import java.lang.management.MemoryUsage;
 		@JPFOption(type = "long", key = "budget.max_insn", defaultValue = "-1", comment = "stop search after specified number of intstructions"),
 		@JPFOption(type = "Int", key = "budget.max_state", defaultValue = "-1", comment = "stop search when reaching specified number of new states"),
 		@JPFOption(type = "Int", key = "budget.max_new_states", defaultValue = "-1", comment = "stop search after specified number of non-replayed new states"),
-		@JPFOption(type = "Int", key = "budget.check_interval", defaultValue = "-1", comment = "decides how often the checks within instructionExecuted happen") })
+		@JPFOption(type = "Int", key = "budget.check_interval", defaultValue = "-1", comment = "decides how often the checks within instructionExecuted happen"),
+		@JPFOption(type = "Boolean", key = "budget.watchdog", defaultValue = "false", comment = "check time and heap budgets from a background thread"),
+		@JPFOption(type = "Long", key = "budget.watchdog_period", defaultValue = "100", comment = "how often the watchdog thread checks time and heap [msec]"),
+		@JPFOption(type = "Long", key = "budget.check_period", defaultValue = "0", comment = "adapt check_interval so instructionExecuted checks run about this often [msec]"),
+		@JPFOption(type = "Int", key = "budget.min_check_interval", defaultValue = "100", comment = "lower bound for the adaptive check_interval"),
+		@JPFOption(type = "Int", key = "budget.max_check_interval", defaultValue = "1000000", comment = "upper bound for the adaptive check_interval"),
+		@JPFOption(type = "Long", key = "budget.max_insn_per_thread", defaultValue = "0", comment = "max number of instructions a single thread can execute"),
+		@JPFOption(type = "String", key = "budget.thread_insn_action", defaultValue = "terminate", comment = "what to do when a thread exceeds max_insn_per_thread: break, terminate or report"),
+		@JPFOption(type = "Long", key = "budget.max_insn_per_method", defaultValue = "0", comment = "max number of instructions executed within a single method"),
+		@JPFOption(type = "Boolean", key = "budget.method_profile", defaultValue = "false", comment = "publish the methods executing the most instructions"),
+		@JPFOption(type = "Int", key = "budget.method_profile_size", defaultValue = "10", comment = "number of methods listed in the method profile"),
+		@JPFOption(type = "Long", key = "budget.max_sut_heap", defaultValue = "0", comment = "stop search when the live objects of the SUT reach the specified size [bytes]"),
+		@JPFOption(type = "Boolean", key = "budget.heap_notifications", defaultValue = "false", comment = "enforce max_heap through memory pool threshold notifications instead of polling"),
+		@JPFOption(type = "Int", key = "budget.record_size", defaultValue = "0", comment = "number of budget consumption samples kept, one per check_interval"),
+		@JPFOption(type = "String", key = "budget.record_file", defaultValue = "", comment = "CSV or JSON file the budget consumption samples are written to"),
+		@JPFOption(type = "Int", key = "budget.record_rows", defaultValue = "20", comment = "number of budget consumption samples shown in the report"),
+		@JPFOption(type = "Boolean", key = "budget.jmx", defaultValue = "false", comment = "register a BudgetCheckerMXBean showing the budget consumption of the running search"),
+		@JPFOption(type = "Boolean", key = "budget.forecast", defaultValue = "false", comment = "estimate the remaining state space and log an ETA"),
+		@JPFOption(type = "Long", key = "budget.forecast_interval", defaultValue = "10000", comment = "how often the forecast is updated [msec]"),
+		@JPFOption(type = "Double", key = "budget.forecast_abort_factor", defaultValue = "0", comment = "stop search when the ETA exceeds the remaining max_time by this factor"),
+		@JPFOption(type = "String", key = "budget.max_time.soft", defaultValue = "", comment = "soft time limit, absolute [msec] or percentage of max_time"),
+		@JPFOption(type = "String", key = "budget.max_heap.soft", defaultValue = "", comment = "soft heap limit, absolute [bytes] or percentage of max_heap"),
+		@JPFOption(type = "String", key = "budget.max_depth.soft", defaultValue = "", comment = "soft depth limit, absolute or percentage of max_depth"),
+		@JPFOption(type = "String", key = "budget.max_insn.soft", defaultValue = "", comment = "soft instruction limit, absolute or percentage of max_insn"),
+		@JPFOption(type = "String", key = "budget.max_state.soft", defaultValue = "", comment = "soft state limit, absolute or percentage of max_state"),
+		@JPFOption(type = "String", key = "budget.max_new_states.soft", defaultValue = "", comment = "soft new state limit, absolute or percentage of max_new_states"),
+		@JPFOption(type = "String[]", key = "budget.soft_action", defaultValue = "log", comment = "what to do when a soft limit is reached: log, stats, gc and/or notify"),
+		@JPFOption(type = "String[]", key = "budget.soft_listeners", defaultValue = "", comment = "BudgetListener classes notified when a soft limit is reached"),
+		@JPFOption(type = "String", key = "budget.checkpoint_file", defaultValue = "", comment = "file the unexplored search frontier is written to when a budget stops the search"),
+		@JPFOption(type = "String", key = "budget.resume_from", defaultValue = "", comment = "checkpoint file of an earlier search to continue from"),
+		@JPFOption(type = "Long", key = "budget.max_cg", defaultValue = "0", comment = "max number of choice generators registered during the search"),
+		@JPFOption(type = "Int", key = "budget.max_choices_per_cg.<type>", defaultValue = "0", comment = "max choices explored per choice generator of a type: thread, boolean, int, long, double or other"),
+		@JPFOption(type = "String", key = "budget.cg_action", defaultValue = "terminate", comment = "what to do when a choice generator budget is exceeded: prune or terminate"),
+		@JPFOption(type = "Double", key = "budget.min_new_state_ratio", defaultValue = "0", comment = "stop search when the share of new states over the window drops below this ratio"),
+		@JPFOption(type = "Int", key = "budget.new_state_window", defaultValue = "1000", comment = "number of state advances min_new_state_ratio is computed over"),
+		@JPFOption(type = "Boolean", key = "budget.revisit_profile", defaultValue = "false", comment = "publish the most revisited states"),
+		@JPFOption(type = "Int", key = "budget.revisit_profile_size", defaultValue = "10", comment = "number of states listed in the revisit profile"),
+		@JPFOption(type = "Int", key = "budget.coverage_plateau_states", defaultValue = "0", comment = "stop search after specified number of new states that cover no new instructions"),
+		@JPFOption(type = "Boolean", key = "budget.coverage", defaultValue = "false", comment = "publish the instruction coverage of the SUT methods"),
+		@JPFOption(type = "Int", key = "budget.coverage_profile_size", defaultValue = "10", comment = "number of least covered methods listed in the coverage report"),
+		@JPFOption(type = "Long", key = "budget.max_alloc", defaultValue = "0", comment = "stop search after specified number of SUT object allocations"),
+		@JPFOption(type = "Long", key = "budget.max_alloc_per_class", defaultValue = "0", comment = "stop search after specified number of SUT object allocations of a single class"),
+		@JPFOption(type = "Boolean", key = "budget.alloc_profile", defaultValue = "false", comment = "publish the classes allocating the most objects"),
+		@JPFOption(type = "Int", key = "budget.alloc_profile_size", defaultValue = "10", comment = "number of classes listed in the allocation profile"),
+		@JPFOption(type = "Long", key = "budget.max_cpu_time", defaultValue = "0", comment = "stop search after the search thread used specified CPU time [msec]"),
+		@JPFOption(type = "Long", key = "budget.max_gc_time", defaultValue = "0", comment = "stop search after the JVM spent specified time in GC [msec]"),
+		@JPFOption(type = "Double", key = "budget.max_gc_overhead", defaultValue = "0", comment = "stop search when the share of time spent in GC over the window exceeds this ratio"),
+		@JPFOption(type = "Long", key = "budget.gc_overhead_window", defaultValue = "10000", comment = "time max_gc_overhead is computed over [msec]"),
+		@JPFOption(type = "String", key = "budget.pool", defaultValue = "", comment = "name of a budget pool shared with the other searches in this JVM"),
+		@JPFOption(type = "Long", key = "budget.pool.max_time", defaultValue = "0", comment = "time budget of the pool [msec]"),
+		@JPFOption(type = "Long", key = "budget.pool.max_insn", defaultValue = "0", comment = "instruction budget of the pool"),
+		@JPFOption(type = "Long", key = "budget.pool.max_state", defaultValue = "0", comment = "new state budget of the pool"),
+		@JPFOption(type = "Boolean", key = "budget.pool.fair_share", defaultValue = "false", comment = "stop a search once it used more than its share of the pool"),
+		@JPFOption(type = "String", key = "budget.pool.action", defaultValue = "all", comment = "which searches stop when the pool is exhausted: all or greedy"),
+		@JPFOption(type = "String", key = "budget.shared_file", defaultValue = "", comment = "memory mapped file holding a budget shared with searches in other processes"),
+		@JPFOption(type = "Long", key = "budget.shared.max_insn", defaultValue = "0", comment = "instruction budget shared through shared_file"),
+		@JPFOption(type = "Long", key = "budget.shared.max_state", defaultValue = "0", comment = "new state budget shared through shared_file"),
+		@JPFOption(type = "Long", key = "budget.shared.max_heap", defaultValue = "0", comment = "heap budget shared through shared_file [bytes]"),
+		@JPFOption(type = "Long", key = "budget.shared.stale_time", defaultValue = "60000", comment = "reset shared_file if nobody updated it for specified time [msec]"),
+		@JPFOption(type = "Int", key = "budget.stack_sample_interval", defaultValue = "0", comment = "sample the SUT call stack every specified number of instructionExecuted checks"),
+		@JPFOption(type = "String", key = "budget.stack_file", defaultValue = "", comment = "file the stack samples are written to in collapsed stack format"),
+		@JPFOption(type = "Int", key = "budget.stack_profile_size", defaultValue = "10", comment = "number of stacks listed in the report"),
+		@JPFOption(type = "Boolean", key = "budget.depth_histogram", defaultValue = "false", comment = "publish new states, revisits and branching factor per search depth"),
+		@JPFOption(type = "Long", key = "budget.max_insn_per_transition", defaultValue = "0", comment = "prune transitions that execute more than specified number of instructions"),
+		@JPFOption(type = "Int", key = "budget.deepening_start", defaultValue = "10", comment = "depth limit of the first search run by BudgetIterativeDeepening"),
+		@JPFOption(type = "Int", key = "budget.deepening_step", defaultValue = "10", comment = "how much BudgetIterativeDeepening grows the depth limit between searches") })
 
 /**
  * The BudgetChecker listener is designed to treat the resources of the local
@@ -59,10 +139,80 @@ import java.lang.management.MemoryUsage;
  * budget.max_state -- This is the upper limit on new states reached in the search
  * budget.max_new_states -- This is the upper limit on new states that are not a trace replay reached in the search
  * budget.check_interval -- This defines how often the checks within instructionExecuted are run. By default it is 10,000
+ * budget.watchdog -- If true, time and heap are checked by a background thread instead of within instructionExecuted
+ * budget.watchdog_period -- This defines how often in miliseconds the watchdog thread checks time and heap. By default it is 100
+ * budget.check_period -- If set, check_interval is adapted to the instruction rate so the checks within instructionExecuted run about every check_period miliseconds
+ * budget.min_check_interval -- This is the lower bound for the adapted check_interval. By default it is 100
+ * budget.max_check_interval -- This is the upper bound for the adapted check_interval. By default it is 1,000,000
+ * budget.max_insn_per_thread -- This is the upper limit on the number of instructions a single thread will run
+ * budget.thread_insn_action -- What happens when a thread exceeds max_insn_per_thread: break its transition once, terminate the search or only report it. By default it is terminate
+ * budget.max_insn_per_method -- This is the upper limit on the number of instructions executed within a single method
+ * budget.method_profile -- If true, the methods that executed the most instructions are published at the end of the search
+ * budget.method_profile_size -- This defines how many methods the method profile lists. By default it is 10
+ * budget.max_sut_heap -- This is the upper limit on the estimated size in bytes of the live objects of the program under test
+ * budget.heap_notifications -- If true, max_heap is enforced through collection threshold notifications of the old generation after each GC instead of polling the heap. It then limits the growth of the old generation, objects that are still young only count once they are promoted
+ * budget.record_size -- If set, the budget consumption is sampled every check_interval instructions and the last record_size samples are kept
+ * budget.record_file -- The file the samples are written to at the end of the search, as JSON if it ends with .json and as CSV otherwise
+ * budget.record_rows -- This defines how many of the samples are shown in the report, at least 1. By default it is 20
+ * budget.jmx -- If true, the limits and current consumption are exposed through a BudgetCheckerMXBean in the platform MBeanServer
+ * budget.forecast -- If true, the remaining state space and the time to explore it are estimated and logged
+ * budget.forecast_interval -- This defines how often in miliseconds the forecast is updated. By default it is 10,000
+ * budget.forecast_abort_factor -- If set, the search stops once the estimated time to completion exceeds the remaining max_time by this factor
+ * budget.max_time.soft, budget.max_heap.soft, budget.max_depth.soft, budget.max_insn.soft, budget.max_state.soft, budget.max_new_states.soft --
+ *     Soft limits of the budgets, either absolute or a percentage of the hard limit (e.g. 80%). Reaching one doesn't stop the search
+ * budget.soft_action -- What happens when a soft limit is reached, any of: log (a warning), stats (log the budget consumption), gc (request a GC)
+ *     and notify (call the BudgetListeners). By default it is log
+ * budget.soft_listeners -- BudgetListener classes that are notified when a soft limit is reached
+ * budget.checkpoint_file -- If set, the path to the unexplored part of the search is written to this file when a budget stops the search
+ * budget.resume_from -- A checkpoint file of an earlier search. The search skips everything that was explored before the checkpoint
+ * budget.max_cg -- This is the upper limit on the number of choice generators registered during the search
+ * budget.max_choices_per_cg.&lt;type&gt; -- This is the upper limit on the choices explored per choice generator of a type,
+ *     where type is thread (scheduling points), boolean, int, long, double or other
+ * budget.cg_action -- What happens when a choice generator budget is exceeded: prune the remaining choices of the
+ *     choice generator or terminate the search. By default it is terminate. The first prune is reported as a search constraint
+ * budget.min_new_state_ratio -- If set, the search stops once the share of new states among the last new_state_window advances drops below this ratio
+ * budget.new_state_window -- This defines how many state advances min_new_state_ratio is computed over. By default it is 1,000
+ * budget.revisit_profile -- If true, the states that were revisited the most are published at the end of the search
+ * budget.revisit_profile_size -- This defines how many states the revisit profile lists. By default it is 10
+ * budget.coverage_plateau_states -- This is the upper limit on the number of new states in a row that don't cover any new instruction
+ * budget.coverage -- If true, the instruction coverage of the SUT methods is published at the end of the search
+ * budget.coverage_profile_size -- This defines how many of the least covered methods the coverage report lists. By default it is 10
+ * budget.max_alloc -- This is the upper limit on the number of objects the program under test allocates
+ * budget.max_alloc_per_class -- This is the upper limit on the number of objects of a single class the program under test allocates
+ * budget.alloc_profile -- If true, the classes that allocated the most objects are published at the end of the search. They
+ *     are listed when a heap or allocation budget is exceeded either way
+ * budget.alloc_profile_size -- This defines how many classes the allocation profile lists. By default it is 10
+ * budget.max_cpu_time -- This sets the max amount of CPU time in miliseconds the search thread should use. Unlike max_time
+ *     this doesn't depend on how busy the machine is
+ * budget.max_gc_time -- This sets the max amount of time in miliseconds the JVM should spend in garbage collection during the search
+ * budget.max_gc_overhead -- If set, the search stops once the share of the last gc_overhead_window spent in garbage collection exceeds this ratio.
+ *     It is measured from GC notifications, so nothing is polled
+ * budget.gc_overhead_window -- This defines the time in miliseconds max_gc_overhead is computed over. By default it is 10,000
+ * budget.pool -- If set, the search draws from the budget pool of this name, shared by all searches in the JVM that name it
+ * budget.pool.max_time, budget.pool.max_insn, budget.pool.max_state -- The budgets of the pool, taken from the first search that joins it
+ * budget.pool.fair_share -- If true, a search stops once it used more than its share of the pool, the budget left by the searches
+ *     that finished divided by the searches still in it
+ * budget.pool.action -- Which searches stop when a pool budget is exhausted: all of them, or only the greedy ones that used more than their share.
+ *     By default it is all
+ * budget.shared_file -- If set, the search draws from a budget shared through this memory mapped file with searches in other
+ *     processes on the same machine. Once a shared budget is exhausted all of them stop
+ * budget.shared.max_insn, budget.shared.max_state, budget.shared.max_heap -- The shared budgets, the heap is the sum over all processes
+ * budget.shared.stale_time -- If nobody updated shared_file for this long, the processes using it are taken to have crashed and
+ *     the next process opening it resets the counters. By default it is 60000 msec
+ * budget.stack_sample_interval -- If set, the call stack of the running SUT thread is sampled every stack_sample_interval checks within instructionExecuted
+ * budget.stack_file -- The file the stack samples are written to at the end of the search, in the collapsed stack format of flame graphs
+ * budget.stack_profile_size -- This defines how many of the most sampled stacks the report lists. By default it is 10
+ * budget.depth_histogram -- If true, the new states, revisits and average branching factor of every search depth are published at the end of the search
+ * budget.max_insn_per_transition -- This is the upper limit on the number of instructions a single transition executes. A transition
+ *     exceeding it is broken and its state ignored, so the search backtracks and explores the rest of the state space
+ * budget.deepening_start -- Depth limit of the first search run by BudgetIterativeDeepening. By default it is 10
+ * budget.deepening_step -- How much BudgetIterativeDeepening grows the depth limit between searches. By default it is 10
  * 
  * Unless specified, the default value for the options listed are 0. Value of 0 indicates that the budget checker will not be checked.
  */
 public class BudgetChecker extends ListenerAdapter {
+
+  static JPFLogger log = JPF.getLogger("BudgetChecker");
     
   private long startTime;
   private MemoryUsage memoryUsage;
@@ -76,6 +226,10 @@ public class BudgetChecker extends ListenerAdapter {
   // Global Counters
   private long insnCount;
   private int newStates;
+  private int maxDepthReached;
+
+  // true once the listener has terminated the search
+  private boolean terminated;
 
   // the budget thresholds
 
@@ -130,8 +284,484 @@ public class BudgetChecker extends ListenerAdapter {
    */
   private int checkInterval;
   
-  // the message explaining the exceeded budget
-  private String message;
+  /**
+   * The instruction count at which the next instructionExecuted budget check runs.
+   * Advanced by checkInterval after every check, so the hot path only needs an
+   * increment and a compare instead of a modulo. Stays at Long.MAX_VALUE if none
+   * of the instruction based budgets are set, which means they are never checked.
+   */
+  private long nextCheckInsn;
+
+  /**
+   * The target time between two instructionExecuted checks in nanoseconds.
+   * This field is set in the config file through budget.check_period (in miliseconds)
+   * If not set, this field is 0 and checkInterval stays fixed
+   */
+  private long checkPeriod;
+
+  /**
+   * The bounds checkInterval is adapted within.
+   * These fields are set in the config file through budget.min_check_interval and budget.max_check_interval
+   */
+  private int minCheckInterval;
+  private int maxCheckInterval;
+
+  // time of the last instructionExecuted check, used to measure the instruction rate
+  private long lastCheckTime;
+
+  /**
+   * What happens when a budget that is local to a single thread is exceeded
+   */
+  enum ThreadAction {
+    /** break the transition of the thread once, when it crosses the budget */
+    BREAK,
+    /** break the transition and terminate the search */
+    TERMINATE,
+    /** only report the constraint */
+    REPORT
+  }
+
+  /**
+   * The maximum amount of instructions a single thread will be allowed to execute.
+   * This field is set in the config file through budget.max_insn_per_thread
+   * If not set, this field is ignored
+   */
+  private long maxInsnPerThread;
+
+  /**
+   * What happens when a thread exceeds maxInsnPerThread.
+   * This field is set in the config file through budget.thread_insn_action
+   */
+  private ThreadAction threadInsnAction;
+
+  // per thread instruction counts, null if budget.max_insn_per_thread is not set
+  private ThreadInsnCounts threadInsns;
+
+  // the thread that exceeded maxInsnPerThread
+  private int exceededThread;
+
+  /**
+   * The maximum amount of instructions that will be allowed to execute within a single method.
+   * This field is set in the config file through budget.max_insn_per_method
+   * If not set, this field is ignored
+   */
+  private long maxInsnPerMethod;
+
+  /**
+   * The number of methods listed in the method profile.
+   * This field is set in the config file through budget.method_profile_size
+   */
+  private int methodProfileSize;
+
+  // per method instruction counts, null if neither budget.max_insn_per_method
+  // nor budget.method_profile is set
+  private MethodInsnCounts methodInsns;
+
+  // the method that exceeded maxInsnPerMethod
+  private MethodInfo exceededMethod;
+
+  /**
+   * The maximum estimated size of the live objects of the program under test.
+   * Unlike maxHeap this is measured on the heap JPF models for the SUT, so it
+   * doesn't include JPF's own memory and doesn't depend on host GC timing.
+   * This field is set in the config file through budget.max_sut_heap
+   * If not set, this field is ignored
+   */
+  private long maxSutHeap;
+
+  // live objects of the SUT, null if budget.max_sut_heap is not set
+  private SutHeapUsage sutHeap;
+
+  /**
+   * What happens when a choice generator budget is exceeded
+   */
+  enum CgAction {
+    /** skip the remaining choices of the choice generator */
+    PRUNE,
+    /** terminate the search */
+    TERMINATE
+  }
+
+  /**
+   * The maximum amount of choice generators the search will be allowed to register.
+   * This field is set in the config file through budget.max_cg
+   * If not set, this field is ignored
+   */
+  private long maxCg;
+
+  /**
+   * What happens when maxCg or a budget.max_choices_per_cg.&lt;type&gt; limit is exceeded.
+   * This field is set in the config file through budget.cg_action
+   */
+  private CgAction cgAction;
+
+  // choice generator counts, null if no choice generator budget is set
+  private ChoiceGeneratorCounts cgCounts;
+
+  // the category of the choice generator that exceeded its choice budget
+  private int exceededCgCategory;
+
+  // whether budget.cg_action prune already pruned choices, which is only reported once
+  private boolean cgPruned;
+
+  /**
+   * The minimum share of new states among the recent state advances.
+   * This field is set in the config file through budget.min_new_state_ratio
+   * If not set, this field is ignored
+   */
+  private double minNewStateRatio;
+
+  /**
+   * The number of states listed in the revisit profile.
+   * This field is set in the config file through budget.revisit_profile_size
+   */
+  private int revisitProfileSize;
+
+  // new state window and revisit counts, null if neither budget.min_new_state_ratio
+  // nor budget.revisit_profile is set
+  private StateRevisits revisits;
+
+  /**
+   * The maximum amount of new states in a row that don't cover new instructions.
+   * This field is set in the config file through budget.coverage_plateau_states
+   * If not set, this field is ignored
+   */
+  private int coveragePlateauStates;
+
+  /**
+   * The number of least covered methods listed in the coverage report.
+   * This field is set in the config file through budget.coverage_profile_size
+   */
+  private int coverageProfileSize;
+
+  // instruction coverage, null if neither budget.coverage_plateau_states nor budget.coverage is set
+  private InsnCoverage coverage;
+
+  /**
+   * The maximum amount of objects the SUT will be allowed to allocate.
+   * This field is set in the config file through budget.max_alloc
+   * If not set, this field is ignored
+   */
+  private long maxAlloc;
+
+  /**
+   * The maximum amount of objects of a single class the SUT will be allowed to allocate.
+   * This field is set in the config file through budget.max_alloc_per_class
+   * If not set, this field is ignored
+   */
+  private long maxAllocPerClass;
+
+  /**
+   * The number of classes listed in the allocation profile.
+   * This field is set in the config file through budget.alloc_profile_size
+   */
+  private int allocProfileSize;
+
+  // allocations per class, null if neither budget.max_alloc, budget.max_alloc_per_class,
+  // budget.alloc_profile, budget.max_heap nor budget.max_sut_heap is set
+  private AllocCounts allocCounts;
+
+  // whether the allocation profile is published, not just listed in the heap messages
+  private boolean publishAllocs;
+
+  // the class that exceeded maxAllocPerClass
+  private ClassInfo exceededClass;
+
+  /**
+   * The max CPU time the search thread will be allowed to use, in nanoseconds.
+   * This field is set in the config file through budget.max_cpu_time (in miliseconds)
+   * If not set, this field is ignored
+   */
+  private long maxCpuTime;
+
+  /**
+   * The max time the JVM will be allowed to spend in GC, in nanoseconds.
+   * This field is set in the config file through budget.max_gc_time (in miliseconds)
+   * If not set, this field is ignored
+   */
+  private long maxGcTime;
+
+  private ThreadMXBean threadBean;
+  private List<GarbageCollectorMXBean> gcBeans;
+
+  // CPU time of the search thread and total GC time when the search started [nsec]
+  private long startCpuTime;
+  private long startGcTime;
+
+  // new states since the last one that covered new instructions, and the coverage at that point
+  private int statesWithoutCoverage;
+  private long lastCoveredInsns;
+
+  // Bit flags for the budgets that are polled by the listener
+  private static final int CHECK_TIME = 0x1;
+  private static final int CHECK_HEAP = 0x2;
+  private static final int CHECK_INSN = 0x4;
+  private static final int CHECK_CPU = 0x8;
+  private static final int CHECK_GC = 0x10;
+
+  /**
+   * The set of budgets that are set and polled within instructionExecuted
+   * (and time, heap, CPU and GC time within stateAdvanced), computed once by the
+   * constructor so disabled budgets are never looked at. Time and heap are
+   * left out if they are checked by the watchdog or heap notifications.
+   */
+  private int polledChecks;
+
+  // Constants identifying which budget was exceeded
+  private static final int NONE = 0;
+  static final int TIME_EXCEEDED = 1;
+  static final int HEAP_EXCEEDED = 2;
+  static final int DEPTH_EXCEEDED = 3;
+  static final int INSN_EXCEEDED = 4;
+  static final int STATES_EXCEEDED = 5;
+  static final int NEW_STATES_EXCEEDED = 6;
+  private static final int THREAD_INSN_EXCEEDED = 7;
+  private static final int METHOD_INSN_EXCEEDED = 8;
+  private static final int SUT_HEAP_EXCEEDED = 9;
+  private static final int FORECAST_EXCEEDED = 10;
+  private static final int CG_EXCEEDED = 11;
+  private static final int CG_CHOICES_EXCEEDED = 12;
+  private static final int NEW_STATE_RATIO_EXCEEDED = 13;
+  private static final int COVERAGE_PLATEAU_EXCEEDED = 14;
+  private static final int ALLOC_EXCEEDED = 15;
+  private static final int CLASS_ALLOC_EXCEEDED = 16;
+  private static final int CPU_TIME_EXCEEDED = 17;
+  private static final int GC_TIME_EXCEEDED = 18;
+  static final int GC_OVERHEAD_EXCEEDED = 19;
+  private static final int POOL_EXCEEDED = 20;
+  private static final int SHARED_EXCEEDED = 21;
+  private static final int CG_PRUNED = 22;
+
+  // number of classes listed in constraint messages
+  private static final int TOP_ALLOC_CLASSES = 3;
+
+  // the budget that was exceeded and the value it was exceeded with. The message
+  // for the JPF report is only built from these once a check has actually fired
+  private int exceeded = NONE;
+  private long exceededValue;
+
+  /**
+   * Background thread checking the time and heap budgets.
+   * This field is set in the config file through budget.watchdog
+   * If not set, this field is null and time and heap are checked within instructionExecuted
+   */
+  private BudgetWatchdog watchdog;
+
+  /**
+   * Samples of the budget consumption, taken at every instructionExecuted check.
+   * This field is set in the config file through budget.record_size
+   * If not set, this field is null
+   */
+  private BudgetTimeSeries timeSeries;
+
+  // file the samples are written to, null if budget.record_file is not set
+  private String recordFile;
+
+  // number of samples shown in the report
+  private int recordRows;
+
+  /**
+   * The MXBean exposing the budget consumption to JMX clients.
+   * This field is set in the config file through budget.jmx
+   * If not set, this field is null
+   */
+  private BudgetCheckerStatus status;
+
+  /**
+   * Estimate of the remaining state space and time to completion.
+   * This field is set in the config file through budget.forecast
+   * If not set, this field is null
+   */
+  private BudgetForecast forecast;
+
+  /**
+   * Time between two forecasts in miliseconds.
+   * This field is set in the config file through budget.forecast_interval
+   */
+  private long forecastInterval;
+
+  /**
+   * The factor by which the forecast may exceed the remaining time budget.
+   * This field is set in the config file through budget.forecast_abort_factor
+   * If not set or if budget.max_time is not set, the search is never stopped early
+   */
+  private double forecastAbortFactor;
+
+  // time of the next forecast and the time budget left at the last forecast
+  private long nextForecastTime;
+  private long forecastRemainingTime;
+
+  // a forecast needs this many new states before it is worth anything
+  private static final int MIN_FORECAST_STATES = 100;
+
+  /**
+   * The file the search frontier is written to once a budget terminates the search.
+   * This field is set in the config file through budget.checkpoint_file
+   * If not set, this field is null
+   */
+  private String checkpointFile;
+
+  // the path to the state the search was terminated in
+  private int[][] checkpointPath;
+
+  /**
+   * The checkpoint of an earlier search this search continues from.
+   * This field is set in the config file through budget.resume_from
+   * If not set, this field is null
+   */
+  private SearchCheckpoint resume;
+
+  /**
+   * The soft limits of the budgets.
+   * These are set in the config file through budget.max_*.soft
+   * If none is set, this field is null
+   */
+  private SoftLimits softLimits;
+
+  // Bit flags for the actions taken when a soft limit is reached
+  private static final int SOFT_LOG = 0x1;
+  private static final int SOFT_STATS = 0x2;
+  private static final int SOFT_GC = 0x4;
+  private static final int SOFT_NOTIFY = 0x8;
+
+  /**
+   * The actions taken when a soft limit is reached.
+   * This field is set in the config file through budget.soft_action
+   */
+  private int softActions;
+
+  // listeners notified when a soft limit is reached
+  private List<BudgetListener> budgetListeners = new ArrayList<BudgetListener>();
+
+  /**
+   * Sets the heap thresholds that enforce max_heap.
+   * This field is set in the config file through budget.heap_notifications
+   * If not set, this field is null and the heap is polled
+   */
+  private HeapThresholdMonitor heapMonitor;
+
+  /**
+   * The highest share of time the JVM will be allowed to spend in GC.
+   * This field is set in the config file through budget.max_gc_overhead
+   * If not set, this field is ignored
+   */
+  private double maxGcOverhead;
+
+  /**
+   * The time maxGcOverhead is computed over in miliseconds.
+   * This field is set in the config file through budget.gc_overhead_window
+   */
+  private long gcOverheadWindow;
+
+  // watches the GC notifications, null if budget.max_gc_overhead is not set
+  private GcOverheadMonitor gcMonitor;
+
+  /**
+   * Which searches stop when a budget of the pool is exhausted
+   */
+  enum PoolAction {
+    /** every search in the pool */
+    ALL,
+    /** only the searches that used more than their share */
+    GREEDY
+  }
+
+  /**
+   * The budget pool shared with other searches in this JVM.
+   * This field is set in the config file through budget.pool
+   * If not set, this field is null
+   */
+  private BudgetPool pool;
+
+  /**
+   * These fields are set in the config file through budget.pool.action and budget.pool.fair_share
+   */
+  private PoolAction poolAction;
+  private boolean poolFairShare;
+
+  // instructions drawn from the pool so far
+  private long poolDrawnInsns;
+
+  /**
+   * The budget shared with searches in other processes.
+   * This field is set in the config file through budget.shared_file
+   * If not set, this field is null
+   */
+  private SharedBudgetFile shared;
+
+  /**
+   * The shared budgets.
+   * These fields are set in the config file through budget.shared.max_insn,
+   * budget.shared.max_state and budget.shared.max_heap
+   */
+  private long sharedMaxInsn;
+  private long sharedMaxState;
+  private long sharedMaxHeap;
+
+  /**
+   * The number of instructionExecuted checks between two stack samples.
+   * This field is set in the config file through budget.stack_sample_interval
+   * If not set, this field is ignored
+   */
+  private int stackSampleInterval;
+
+  /**
+   * The file the stack samples are written to.
+   * This field is set in the config file through budget.stack_file
+   */
+  private String stackFile;
+
+  /**
+   * The number of stacks listed in the report.
+   * This field is set in the config file through budget.stack_profile_size
+   */
+  private int stackProfileSize;
+
+  // the stack samples, null if budget.stack_sample_interval is not set
+  private StackSampler stackSampler;
+
+  // checks left until the next stack sample
+  private int checksToSample;
+
+  // states per depth, null if budget.depth_histogram is not set
+  private DepthHistogram depthHistogram;
+
+  /**
+   * The maximum amount of instructions a single transition will be allowed to execute.
+   * Unlike the other budgets this doesn't stop the search, only the transition.
+   * This field is set in the config file through budget.max_insn_per_transition
+   * If not set, this field is ignored
+   */
+  private long maxInsnPerTransition;
+
+  // instructions executed since the last state, and the transitions that were pruned
+  private long transitionInsns;
+  private long prunedTransitions;
+
+  // instructions, new states and heap drawn from the shared budget so far
+  private long sharedDrawnInsns;
+  private long sharedDrawnStates;
+  private long sharedHeap;
+
+  /**
+   * A budget found exhausted outside of the search thread
+   */
+  private static final class AsyncExhausted {
+    final int exceeded;
+    final long value;
+
+    AsyncExhausted (int exceeded, long value) {
+      this.exceeded = exceeded;
+      this.value = value;
+    }
+  }
+
+  // marks the exhausted budget as reported, so no later one replaces it
+  private static final AsyncExhausted ASYNC_CONSUMED = new AsyncExhausted(0, 0);
+
+  // set by the watchdog thread, the heap or the GC notifications once the time,
+  // heap or GC overhead budget is exhausted, the hot path only reads this reference
+  private final AtomicReference<AsyncExhausted> asyncExhausted = new AtomicReference<AsyncExhausted>();
   
   /**
    * Initializes a new BudgetChecker Listener object for the 
@@ -153,6 +783,48 @@ public class BudgetChecker extends ListenerAdapter {
     maxState = conf.getInt("budget.max_state", 0);
     maxNewStates = conf.getInt("budget.max_new_states", 0);
     checkInterval = conf.getInt("budget.check_interval", 10000);
+    if (checkInterval <= 0) {
+      checkInterval = 10000;
+    }
+    
+    polledChecks = 0;
+    if (maxTime > 0) {
+      polledChecks |= CHECK_TIME;
+    }
+    if (maxHeap > 0) {
+      polledChecks |= CHECK_HEAP;
+    }
+    if (maxInsn > 0) {
+      polledChecks |= CHECK_INSN;
+    }
+
+    maxCpuTime = conf.getDuration("budget.max_cpu_time", 0) * 1000000;
+    if (maxCpuTime > 0) {
+      threadBean = ManagementFactory.getThreadMXBean();
+      if (threadBean.isCurrentThreadCpuTimeSupported()) {
+        if (!threadBean.isThreadCpuTimeEnabled()) {
+          threadBean.setThreadCpuTimeEnabled(true);
+        }
+        polledChecks |= CHECK_CPU;
+      } else {
+        log.warning("thread CPU time is not supported by this JVM, budget.max_cpu_time is ignored");
+        maxCpuTime = 0;
+      }
+    }
+
+    maxGcTime = conf.getDuration("budget.max_gc_time", 0) * 1000000;
+    if (maxGcTime > 0) {
+      gcBeans = ManagementFactory.getGarbageCollectorMXBeans();
+      polledChecks |= CHECK_GC;
+    }
+
+    checkPeriod = conf.getDuration("budget.check_period", 0) * 1000000;
+    if (checkPeriod > 0) {
+      minCheckInterval = Math.max(1, conf.getInt("budget.min_check_interval", 100));
+      maxCheckInterval = Math.max(minCheckInterval, conf.getInt("budget.max_check_interval", 1000000));
+      checkInterval = Math.min(Math.max(checkInterval, minCheckInterval), maxCheckInterval);
+      lastCheckTime = System.nanoTime();
+    }
     
     startTime = System.currentTimeMillis();
     
@@ -162,54 +834,337 @@ public class BudgetChecker extends ListenerAdapter {
       startingMemoryUsage = memoryUsage.getUsed();
     }
 
-    search = jpf.getSearch();
-    vm = jpf.getVM();
-  }
-  
-  /**
-   * Method that checks if the time that the search has ran has 
-   * exceeded the max time specified in the configuration file.
-   * 
-   * @return true if the time has exceeded, false otherwise
-   *    - If budget.max_time is not set, returns false
-   */
-  public boolean timeExceeded() {
-    if (maxTime > 0) {
-      long duration = System.currentTimeMillis() - startTime;
-      if (duration > maxTime) {
-        message = "max time exceeded: " + Publisher.formatHMS(duration)
-               + " >= " + Publisher.formatHMS(maxTime);
-        return true;
+    maxInsnPerThread = conf.getLong("budget.max_insn_per_thread", 0);
+    if (maxInsnPerThread > 0) {
+      threadInsns = new ThreadInsnCounts();
+      threadInsnAction = conf.getEnum("budget.thread_insn_action", ThreadAction.values(), ThreadAction.TERMINATE);
+    }
+
+    maxInsnPerMethod = conf.getLong("budget.max_insn_per_method", 0);
+    if (maxInsnPerMethod > 0 || conf.getBoolean("budget.method_profile", false)) {
+      methodInsns = new MethodInsnCounts();
+      methodProfileSize = Math.max(0, conf.getInt("budget.method_profile_size", 10));
+    }
+
+    maxSutHeap = conf.getMemorySize("budget.max_sut_heap", 0);
+    if (maxSutHeap > 0) {
+      sutHeap = new SutHeapUsage();
+    }
+
+    maxCg = conf.getLong("budget.max_cg", 0);
+    cgCounts = new ChoiceGeneratorCounts();
+    boolean cgLimits = maxCg > 0;
+    for (int c = 0; c < ChoiceGeneratorCounts.NAMES.length; c++) {
+      int limit = conf.getInt("budget.max_choices_per_cg." + ChoiceGeneratorCounts.NAMES[c], 0);
+      if (limit > 0) {
+        cgCounts.setLimit(c, limit);
+        cgLimits = true;
       }
     }
-    
-    return false;
-  }
-  
-  /**
-   * Method that checks if the amount of space taken by the heap
-   * has exceeded the size specified in the configuration file.
-   * 
-   * @return true if the heap has exceeded, false otherwise
-   *    - If budget.max_heap is not set, returns false
-   */
-  public boolean heapExceeded() {
+    if (cgLimits) {
+      cgAction = conf.getEnum("budget.cg_action", CgAction.values(), CgAction.TERMINATE);
+    } else {
+      cgCounts = null;
+    }
 
-    if (maxHeap > 0) {
+    minNewStateRatio = conf.getDouble("budget.min_new_state_ratio", 0);
+    if (minNewStateRatio > 0 || conf.getBoolean("budget.revisit_profile", false)) {
+      revisits = new StateRevisits(Math.max(1, conf.getInt("budget.new_state_window", 1000)));
+      revisitProfileSize = Math.max(0, conf.getInt("budget.revisit_profile_size", 10));
+    }
 
-      // Constant used for the amount of bytes in a megabyte
-      final int MEGABYTE = 1048576;
+    coveragePlateauStates = conf.getInt("budget.coverage_plateau_states", 0);
+    if (coveragePlateauStates > 0 || conf.getBoolean("budget.coverage", false)) {
+      coverage = new InsnCoverage();
+      coverageProfileSize = Math.max(0, conf.getInt("budget.coverage_profile_size", 10));
+    }
 
-      MemoryUsage memoryUsage = memoryBean.getHeapMemoryUsage();
-      long used = memoryUsage.getUsed() - startingMemoryUsage;
-      if (used > maxHeap) {
-        message = "max heap exceeded: " + (((float)used) / MEGABYTE) + "MB" 
-                      + " >= " + (((float)maxHeap) / MEGABYTE) + "MB" ;
-        return true;
+    maxAlloc = conf.getLong("budget.max_alloc", 0);
+    maxAllocPerClass = conf.getLong("budget.max_alloc_per_class", 0);
+    publishAllocs = maxAlloc > 0 || maxAllocPerClass > 0 || conf.getBoolean("budget.alloc_profile", false);
+    if (publishAllocs || maxHeap > 0 || maxSutHeap > 0) {
+      // counted for the heap budgets as well, so their messages can list the top allocating classes
+      allocCounts = new AllocCounts();
+      allocProfileSize = Math.max(0, conf.getInt("budget.alloc_profile_size", 10));
+    }
+
+    String poolName = conf.getString("budget.pool");
+    if (poolName != null && !poolName.isEmpty()) {
+      pool = BudgetPool.join(poolName, conf.getDuration("budget.pool.max_time", 0),
+                             conf.getLong("budget.pool.max_insn", 0), conf.getLong("budget.pool.max_state", 0));
+      poolAction = conf.getEnum("budget.pool.action", PoolAction.values(), PoolAction.ALL);
+      poolFairShare = conf.getBoolean("budget.pool.fair_share", false);
+    }
+
+    String sharedFile = conf.getString("budget.shared_file");
+    if (sharedFile != null && !sharedFile.isEmpty()) {
+      try {
+        shared = SharedBudgetFile.open(sharedFile, conf.getDuration("budget.shared.stale_time", 60000));
+        sharedMaxInsn = conf.getLong("budget.shared.max_insn", 0);
+        sharedMaxState = conf.getLong("budget.shared.max_state", 0);
+        sharedMaxHeap = conf.getMemorySize("budget.shared.max_heap", 0);
+      } catch (IOException x) {
+        log.warning("could not open shared budget " + sharedFile + ": " + x.getMessage());
       }
     }
-    
-    return false;
+
+    stackSampleInterval = conf.getInt("budget.stack_sample_interval", 0);
+    if (stackSampleInterval > 0) {
+      stackSampler = new StackSampler();
+      stackFile = conf.getString("budget.stack_file");
+      stackProfileSize = Math.max(0, conf.getInt("budget.stack_profile_size", 10));
+      checksToSample = stackSampleInterval;
+    }
+
+    if (conf.getBoolean("budget.depth_histogram", false)) {
+      depthHistogram = new DepthHistogram();
+    }
+
+    maxInsnPerTransition = conf.getLong("budget.max_insn_per_transition", 0);
+
+    int recordSize = conf.getInt("budget.record_size", 0);
+    if (recordSize > 0) {
+      timeSeries = new BudgetTimeSeries(recordSize);
+      recordFile = conf.getString("budget.record_file");
+      recordRows = Math.max(1, conf.getInt("budget.record_rows", 20));
+    }
+
+    if (conf.getBoolean("budget.jmx", false)) {
+      // the heap is published relative to the same baseline max_heap uses
+      if (memoryBean == null) {
+        memoryBean = ManagementFactory.getMemoryMXBean();
+        startingMemoryUsage = memoryBean.getHeapMemoryUsage().getUsed();
+      }
+      status = new BudgetCheckerStatus(startTime, maxTime, maxHeap, maxDepth, maxInsn, maxState, maxNewStates);
+      try {
+        status.register();
+      } catch (Exception x) {
+        log.warning("could not register BudgetCheckerMXBean: " + x.getMessage());
+        status = null;
+      }
+    }
+
+    if (conf.getBoolean("budget.forecast", false)) {
+      forecast = new BudgetForecast();
+      forecastInterval = conf.getDuration("budget.forecast_interval", 10000);
+      forecastAbortFactor = conf.getDouble("budget.forecast_abort_factor", 0);
+      nextForecastTime = startTime + forecastInterval;
+    }
+
+    checkpointFile = conf.getString("budget.checkpoint_file");
+    if (checkpointFile != null && checkpointFile.isEmpty()) {
+      checkpointFile = null;
+    }
+    String resumeFile = conf.getString("budget.resume_from");
+    if (resumeFile != null && resumeFile.isEmpty()) {
+      resumeFile = null;
+    }
+
+    // the frontier only separates explored from unexplored states if the
+    // choices are explored in order, which only the depth first search does
+    if (checkpointFile != null || resumeFile != null) {
+      Class<?> searchClass = conf.getClass("search.class");
+      if (searchClass != null && !DFSearch.class.isAssignableFrom(searchClass)) {
+        throw new JPFConfigException("budget.checkpoint_file and budget.resume_from need a DFSearch, not "
+                                     + searchClass.getName());
+      }
+    }
+
+    if (resumeFile != null) {
+      try {
+        resume = SearchCheckpoint.read(resumeFile);
+        log.info("resuming search from " + resumeFile + " at depth " + resume.getLength());
+      } catch (IOException x) {
+        log.warning("could not read search checkpoint " + resumeFile + ": " + x.getMessage());
+      }
+    }
+
+    softLimits = new SoftLimits();
+    softLimits.set(TIME_EXCEEDED, getSoftLimit(conf, "budget.max_time", maxTime));
+    softLimits.set(HEAP_EXCEEDED, getSoftLimit(conf, "budget.max_heap", maxHeap));
+    softLimits.set(DEPTH_EXCEEDED, getSoftLimit(conf, "budget.max_depth", maxDepth));
+    softLimits.set(INSN_EXCEEDED, getSoftLimit(conf, "budget.max_insn", maxInsn));
+    softLimits.set(STATES_EXCEEDED, getSoftLimit(conf, "budget.max_state", maxState));
+    softLimits.set(NEW_STATES_EXCEEDED, getSoftLimit(conf, "budget.max_new_states", maxNewStates));
+    if (softLimits.isEmpty()) {
+      softLimits = null;
+    } else {
+      String[] actions = conf.getStringArray("budget.soft_action");
+      if (actions == null) {
+        softActions = SOFT_LOG;
+      } else {
+        for (String action : actions) {
+          if (action.equalsIgnoreCase("log")) {
+            softActions |= SOFT_LOG;
+          } else if (action.equalsIgnoreCase("stats")) {
+            softActions |= SOFT_STATS;
+          } else if (action.equalsIgnoreCase("gc")) {
+            softActions |= SOFT_GC;
+          } else if (action.equalsIgnoreCase("notify")) {
+            softActions |= SOFT_NOTIFY;
+          }
+        }
+      }
+
+      List<BudgetListener> configured = conf.getInstances("budget.soft_listeners", BudgetListener.class);
+      if (configured != null) {
+        budgetListeners.addAll(configured);
+      }
+
+      if (softLimits.isSet(HEAP_EXCEEDED) && memoryBean == null) {
+        memoryBean = ManagementFactory.getMemoryMXBean();
+        startingMemoryUsage = memoryBean.getHeapMemoryUsage().getUsed();
+      }
+    }
+
+    long watchedHeap = maxHeap;
+    if (maxHeap > 0 && conf.getBoolean("budget.heap_notifications", false)) {
+      heapMonitor = HeapThresholdMonitor.start(this, maxHeap);
+      if (heapMonitor != null) {
+        // the thresholds take over the heap, neither the listener nor the watchdog has to poll it
+        polledChecks &= ~CHECK_HEAP;
+        watchedHeap = 0;
+      }
+    }
+
+    maxGcOverhead = conf.getDouble("budget.max_gc_overhead", 0);
+    if (maxGcOverhead > 0) {
+      gcOverheadWindow = conf.getDuration("budget.gc_overhead_window", 10000);
+      if (gcOverheadWindow <= 0) {
+        gcOverheadWindow = 10000;
+      }
+      gcMonitor = new GcOverheadMonitor(this, maxGcOverhead, gcOverheadWindow);
+      if (!gcMonitor.start()) {
+        log.warning("no GC notifications available, budget.max_gc_overhead is ignored");
+        gcMonitor = null;
+      }
+    }
+
+    if (conf.getBoolean("budget.watchdog", false) && (maxTime > 0 || watchedHeap > 0)) {
+      long period = conf.getDuration("budget.watchdog_period", 100);
+      if (period <= 0) {
+        period = 100;
+      }
+      watchdog = new BudgetWatchdog(this, period, startTime, maxTime,
+                                    memoryBean, startingMemoryUsage, watchedHeap);
+
+      // the watchdog takes over time and heap, no need to poll them on the interpreter thread
+      polledChecks &= ~(CHECK_TIME | CHECK_HEAP);
+    }
+    boolean softInsnChecks = softLimits != null && (softLimits.isSet(TIME_EXCEEDED)
+        || softLimits.isSet(HEAP_EXCEEDED) || softLimits.isSet(INSN_EXCEEDED));
+    // the budgets found exhausted by another thread are picked up at the checks as well
+    boolean asyncChecks = watchdog != null || heapMonitor != null || gcMonitor != null;
+    nextCheckInsn = (polledChecks != 0 || asyncChecks || timeSeries != null || status != null || softInsnChecks
+                     || pool != null || shared != null || stackSampler != null)
+        ? checkInterval : Long.MAX_VALUE;
+
+    search = jpf.getSearch();
+    vm = jpf.getVM();
+
+    if (threadInsns != null || methodInsns != null || sutHeap != null || timeSeries != null
+        || forecast != null || cgCounts != null || revisits != null || coverage != null
+        || publishAllocs || stackSampler != null || depthHistogram != null
+        || maxInsnPerTransition > 0) {
+      jpf.addPublisherExtension(ConsolePublisher.class, this);
+    }
+  }
+  
+  /**
+   * Method that checks if the time that the search has ran has 
+   * exceeded the max time specified in the configuration file.
+   * 
+   * @return true if the time has exceeded, false otherwise
+   *    - If budget.max_time is not set, returns false
+   */
+  public boolean timeExceeded() {
+    if (maxTime > 0) {
+      long duration = System.currentTimeMillis() - startTime;
+      if (duration > maxTime) {
+        exceeded = TIME_EXCEEDED;
+        exceededValue = duration;
+        return true;
+      }
+    }
+    
+    return false;
+  }
+  
+  /**
+   * Method that checks if the CPU time used by the search thread since the
+   * search started has exceeded the CPU time specified in the configuration file.
+   * Must be called from the search thread.
+   * 
+   * @return true if the CPU time has exceeded, false otherwise
+   *    - If budget.max_cpu_time is not set, returns false
+   */
+  public boolean cpuTimeExceeded () {
+    if (maxCpuTime > 0) {
+      long used = threadBean.getCurrentThreadCpuTime() - startCpuTime;
+      if (used > maxCpuTime) {
+        exceeded = CPU_TIME_EXCEEDED;
+        exceededValue = used;
+        return true;
+      }
+    }
+
+    return false;
+  }
+
+  /**
+   * Method that checks if the time the JVM spent in garbage collection since
+   * the search started has exceeded the GC time specified in the configuration file.
+   * 
+   * @return true if the GC time has exceeded, false otherwise
+   *    - If budget.max_gc_time is not set, returns false
+   */
+  public boolean gcTimeExceeded () {
+    if (maxGcTime > 0) {
+      long used = getGcTime() - startGcTime;
+      if (used > maxGcTime) {
+        exceeded = GC_TIME_EXCEEDED;
+        exceededValue = used;
+        return true;
+      }
+    }
+
+    return false;
+  }
+
+  /**
+   * @return the total time all garbage collectors spent collecting [nsec]
+   */
+  private long getGcTime () {
+    long total = 0;
+    for (GarbageCollectorMXBean gc : gcBeans) {
+      long time = gc.getCollectionTime();
+      if (time > 0) {
+        total += time;
+      }
+    }
+    return total * 1000000;
+  }
+
+  /**
+   * Method that checks if the amount of space taken by the heap
+   * has exceeded the size specified in the configuration file.
+   * 
+   * @return true if the heap has exceeded, false otherwise
+   *    - If budget.max_heap is not set, returns false
+   */
+  public boolean heapExceeded() {
+
+    if (maxHeap > 0) {
+      MemoryUsage memoryUsage = memoryBean.getHeapMemoryUsage();
+      long used = memoryUsage.getUsed() - startingMemoryUsage;
+      if (used > maxHeap) {
+        exceeded = HEAP_EXCEEDED;
+        exceededValue = used;
+        return true;
+      }
+    }
+    
+    return false;
   }
   
   /**
@@ -223,7 +1178,8 @@ public class BudgetChecker extends ListenerAdapter {
     if (maxDepth > 0) {
       int depth = search.getDepth();
       if (depth > maxDepth) {
-        message = "max search depth exceeded: " + maxDepth;
+        exceeded = DEPTH_EXCEEDED;
+        exceededValue = depth;
         return true;
       }
     }
@@ -241,7 +1197,8 @@ public class BudgetChecker extends ListenerAdapter {
   public boolean insnExceeded () {
     if (maxInsn > 0) {
       if (insnCount > maxInsn) {
-        message = "max instruction count exceeded: " + maxInsn;
+        exceeded = INSN_EXCEEDED;
+        exceededValue = insnCount;
         return true;
       }
     }
@@ -259,7 +1216,8 @@ public class BudgetChecker extends ListenerAdapter {
     if (maxState > 0) {
       int stateId = vm.getStateId();
       if (stateId >= maxState) {
-        message = "max states exceeded: " + maxState;
+        exceeded = STATES_EXCEEDED;
+        exceededValue = stateId;
         return true;
       }
     }
@@ -277,13 +1235,927 @@ public class BudgetChecker extends ListenerAdapter {
   public boolean newStatesExceeded(){
     if (maxNewStates > 0){
       if (newStates > maxNewStates) {
-        message = "max new state count exceeded: " + maxNewStates;
+        exceeded = NEW_STATES_EXCEEDED;
+        exceededValue = newStates;
         return true;
       }
     }
     return false;
   }
   
+  /**
+   * Builds the message explaining the exceeded budget for the JPF report.
+   * Only called after one of the budget checks has fired.
+   * 
+   * @return the message for the last budget that was exceeded
+   */
+  private String getMessage() {
+    // Constant used for the amount of bytes in a megabyte
+    final int MEGABYTE = 1048576;
+
+    switch (exceeded) {
+      case TIME_EXCEEDED:
+        return "max time exceeded: " + Publisher.formatHMS(exceededValue)
+               + " >= " + Publisher.formatHMS(maxTime);
+      case HEAP_EXCEEDED:
+        return "max heap exceeded: " + (((float)exceededValue) / MEGABYTE) + "MB" 
+               + " >= " + (((float)maxHeap) / MEGABYTE) + "MB" + getTopAllocations();
+      case DEPTH_EXCEEDED:
+        return "max search depth exceeded: " + maxDepth;
+      case INSN_EXCEEDED:
+        if (methodInsns != null) {
+          return "max instruction count exceeded: " + maxInsn
+                 + ", most instructions in " + methodInsns.getHottestMethod();
+        }
+        return "max instruction count exceeded: " + maxInsn;
+      case STATES_EXCEEDED:
+        return "max states exceeded: " + maxState;
+      case NEW_STATES_EXCEEDED:
+        return "max new state count exceeded: " + maxNewStates;
+      case THREAD_INSN_EXCEEDED:
+        return "max instruction count per thread exceeded: " + maxInsnPerThread
+               + " by " + threadInsns.getName(exceededThread);
+      case METHOD_INSN_EXCEEDED:
+        return "max instruction count per method exceeded: " + maxInsnPerMethod
+               + " in " + exceededMethod.getFullName();
+      case SUT_HEAP_EXCEEDED:
+        return "max SUT heap exceeded: " + exceededValue + " bytes >= " + maxSutHeap + " bytes" + getTopAllocations();
+      case CG_EXCEEDED:
+        return "max choice generator count exceeded: " + maxCg;
+      case CG_CHOICES_EXCEEDED:
+        return "max choices per choice generator exceeded: " + cgCounts.getLimit(exceededCgCategory)
+               + " for " + ChoiceGeneratorCounts.NAMES[exceededCgCategory] + " choice generators";
+      case CG_PRUNED:
+        return "choice generator budget exceeded: pruning the remaining choices of "
+               + ChoiceGeneratorCounts.NAMES[exceededCgCategory] + " choice generators";
+      case NEW_STATE_RATIO_EXCEEDED:
+        return "min new state ratio exceeded: " + String.format("%.3f", revisits.getNewStateRatio())
+               + " < " + minNewStateRatio + " over the last " + revisits.getWindowSize() + " states";
+      case COVERAGE_PLATEAU_EXCEEDED:
+        return "coverage plateau exceeded: no new instructions covered in " + coveragePlateauStates + " new states";
+      case ALLOC_EXCEEDED:
+        return "max allocation count exceeded: " + maxAlloc + getTopAllocations();
+      case CLASS_ALLOC_EXCEEDED:
+        return "max allocation count per class exceeded: " + maxAllocPerClass + " of " + exceededClass.getName();
+      case CPU_TIME_EXCEEDED:
+        return "max CPU time exceeded: " + Publisher.formatHMS(exceededValue / 1000000)
+               + " >= " + Publisher.formatHMS(maxCpuTime / 1000000);
+      case GC_TIME_EXCEEDED:
+        return "max GC time exceeded: " + Publisher.formatHMS(exceededValue / 1000000)
+               + " >= " + Publisher.formatHMS(maxGcTime / 1000000);
+      case GC_OVERHEAD_EXCEEDED:
+        return "max GC overhead exceeded: " + exceededValue + "% of the last " + Publisher.formatHMS(gcOverheadWindow)
+               + " spent in GC > " + Math.round(maxGcOverhead * 100) + "%";
+      case POOL_EXCEEDED:
+        return "budget pool " + pool.getName() + " exhausted: "
+               + pool.describe((int) exceededValue, (exceededValue == BudgetPool.STATES) ? newStates : insnCount);
+      case SHARED_EXCEEDED:
+        if (exceededValue == SharedBudgetFile.TERMINATED) {
+          return "shared budget exhausted by another search: " + shared.getFileName();
+        }
+        return "shared budget exhausted: " + shared.getFileName() + ", "
+               + ((exceededValue == SharedBudgetFile.INSNS) ? "instructions " + shared.get(SharedBudgetFile.INSNS) + " > " + sharedMaxInsn
+                  : (exceededValue == SharedBudgetFile.STATES) ? "new states " + shared.get(SharedBudgetFile.STATES) + " > " + sharedMaxState
+                  : "heap " + shared.get(SharedBudgetFile.HEAP) + " bytes > " + sharedMaxHeap + " bytes");
+      case FORECAST_EXCEEDED:
+        return "budget forecast exceeded: estimated " + Publisher.formatHMS(exceededValue)
+               + " to completion > " + forecastAbortFactor + " * " + Publisher.formatHMS(forecastRemainingTime) + " left";
+      default:
+        return "budget exceeded";
+    }
+  }
+  
+  /**
+   * @return the classes that allocated the most objects, to be appended to a
+   *    constraint message, or an empty string if allocations aren't counted
+   */
+  private String getTopAllocations () {
+    if (allocCounts == null || allocCounts.getTotal() == 0) {
+      return "";
+    }
+    return ", top allocations: " + allocCounts.getTopClasses(TOP_ALLOC_CLASSES);
+  }
+
+  /**
+   * Called by the watchdog thread, the heap or the GC notifications once the
+   * time, heap or GC overhead budget is exhausted.
+   * The budget and its value are published together in one immutable record,
+   * and only the first budget found exhausted is kept, so the search thread
+   * never sees the budget of one notification with the value of another.
+   * 
+   * @param exceeded The budget that was exceeded
+   * @param value The value it was exceeded with
+   */
+  void budgetExhausted (int exceeded, long value) {
+    asyncExhausted.compareAndSet(null, new AsyncExhausted(exceeded, value));
+  }
+
+  /**
+   * Method that checks if the watchdog thread or the heap notifications have
+   * found the time or heap budget to be exhausted. The record is consumed so
+   * the constraint is only reported once.
+   * 
+   * @return true if the watchdog or heap notifications have fired, false otherwise
+   *    - If neither budget.watchdog nor budget.heap_notifications is set, returns false
+   */
+  private boolean asyncBudgetExceeded () {
+    AsyncExhausted fired = asyncExhausted.get();
+    if (fired != null && fired != ASYNC_CONSUMED) {
+      asyncExhausted.set(ASYNC_CONSUMED);
+      exceeded = fired.exceeded;
+      exceededValue = fired.value;
+      return true;
+    }
+
+    return false;
+  }
+
+  /**
+   * Starts the watchdog thread, if budget.watchdog is set, and records
+   * the SUT heap usage of the initial state, if budget.max_sut_heap is set,
+   * the CPU and GC time the budgets are measured from, and the initial state
+   * as the only state at depth 0 for the forecast and the depth histogram,
+   * since the search never advances to it
+   * 
+   * @param search Search object corresponding to the current search thats running
+   */
+  @Override
+  public void searchStarted (Search search) {
+    if (maxCpuTime > 0) {
+      startCpuTime = threadBean.getCurrentThreadCpuTime();
+    }
+    if (maxGcTime > 0) {
+      startGcTime = getGcTime();
+    }
+    if (watchdog != null) {
+      watchdog.start();
+    }
+    if (sutHeap != null) {
+      sutHeap.stateAdvanced(search.getDepth());
+    }
+    if (status != null) {
+      status.updatePosition(search.getDepth(), vm.getStateId());
+    }
+    if (forecast != null) {
+      forecast.stateAdvanced(search.getDepth(), true);
+    }
+    if (depthHistogram != null) {
+      depthHistogram.stateAdvanced(search.getDepth(), true);
+    }
+  }
+
+  /**
+   * Stops the watchdog thread, the heap and GC notifications and the MXBean and
+   * leaves the budget pool and shared budget, if they are set, and writes the
+   * budget consumption samples, if budget.record_file is set, the stack samples,
+   * if budget.stack_file is set, and the search frontier, if budget.checkpoint_file
+   * is set and a budget stopped the search
+   * 
+   * @param search Search object corresponding to the current search thats running
+   */
+  @Override
+  public void searchFinished (Search search) {
+    if (watchdog != null) {
+      watchdog.stopWatchdog();
+    }
+    if (heapMonitor != null) {
+      heapMonitor.stop();
+    }
+    if (gcMonitor != null) {
+      gcMonitor.stop();
+    }
+    if (pool != null) {
+      pool.drawInsns(insnCount - poolDrawnInsns);
+      poolDrawnInsns = insnCount;
+      pool.leave(insnCount, newStates);
+    }
+    if (shared != null) {
+      shared.close(sharedHeap);
+    }
+
+    if (status != null) {
+      try {
+        status.unregister();
+      } catch (Exception x) {
+        log.warning("could not unregister BudgetCheckerMXBean: " + x.getMessage());
+      }
+    }
+
+    if (timeSeries != null) {
+      recordSample();
+      if (recordFile != null && !recordFile.isEmpty()) {
+        try {
+          timeSeries.export(recordFile);
+        } catch (IOException x) {
+          log.warning("could not write budget samples to " + recordFile + ": " + x.getMessage());
+        }
+      }
+    }
+
+    if (stackSampler != null && stackFile != null && !stackFile.isEmpty()) {
+      try {
+        stackSampler.export(stackFile);
+      } catch (IOException x) {
+        log.warning("could not write stack samples to " + stackFile + ": " + x.getMessage());
+      }
+    }
+
+    if (checkpointPath != null) {
+      try {
+        SearchCheckpoint.write(checkpointFile, checkpointPath);
+        log.info("search checkpoint written to " + checkpointFile);
+      } catch (IOException x) {
+        log.warning("could not write search checkpoint " + checkpointFile + ": " + x.getMessage());
+      }
+    }
+  }
+
+  /**
+   * Adds a sample of the current budget consumption to the time series
+   */
+  private void recordSample () {
+    Runtime rt = Runtime.getRuntime();
+    timeSeries.record(System.currentTimeMillis() - startTime, insnCount, newStates,
+                      vm.getStateId(), search.getDepth(), rt.totalMemory() - rt.freeMemory());
+  }
+
+  /**
+   * Resizes checkInterval from the instruction rate observed since the last
+   * check so that the next check happens about checkPeriod from now.
+   * The interval changes by at most a factor of two per check, so a single
+   * slow or fast transition doesn't throw it off, and stays within
+   * budget.min_check_interval and budget.max_check_interval.
+   */
+  private void adaptCheckInterval () {
+    long now = System.nanoTime();
+    long elapsed = Math.max(1, now - lastCheckTime);
+    lastCheckTime = now;
+
+    // instructions we expect to execute within checkPeriod at the current rate
+    double target = (double)checkInterval * checkPeriod / elapsed;
+    double interval = Math.min(Math.max(target, checkInterval / 2.0), checkInterval * 2.0);
+
+    checkInterval = (int) Math.min(Math.max(interval, minCheckInterval), maxCheckInterval);
+  }
+
+  /**
+   * Counts an instruction for the thread that executed it and handles
+   * the thread exceeding budget.max_insn_per_thread. This only happens
+   * once per thread since the count only grows. Breaking the transition
+   * ends it at the instruction that crossed the budget and stores the
+   * state reached so far, it doesn't schedule another thread.
+   * 
+   * @param threadInfo The thread that executed the instruction
+   */
+  private void countThreadInsn (ThreadInfo threadInfo) {
+    int id = threadInfo.getId();
+    long count = threadInsns.increment(id);
+
+    if (count == maxInsnPerThread + 1) {
+      threadInsns.setName(id, threadInfo.getName());
+      threadInsns.setExceeded(id);
+
+      exceeded = THREAD_INSN_EXCEEDED;
+      exceededValue = count;
+      exceededThread = id;
+      search.notifySearchConstraintHit(getMessage());
+
+      if (threadInsnAction != ThreadAction.REPORT) {
+        threadInfo.breakTransition("budgetConstraint");
+      }
+      if (threadInsnAction == ThreadAction.TERMINATE) {
+        terminateSearch();
+      }
+    }
+  }
+
+  /**
+   * Counts an instruction for the method it belongs to and terminates
+   * the search if the method exceeds budget.max_insn_per_method.
+   * This only happens once per method since the count only grows.
+   * 
+   * @param threadInfo The thread that executed the instruction
+   * @param executedInsn The instruction that was executed
+   */
+  private void countMethodInsn (ThreadInfo threadInfo, Instruction executedInsn) {
+    MethodInfo mi = executedInsn.getMethodInfo();
+    long count = methodInsns.increment(mi);
+
+    if (count == maxInsnPerMethod + 1) {
+      exceeded = METHOD_INSN_EXCEEDED;
+      exceededValue = count;
+      exceededMethod = mi;
+      search.notifySearchConstraintHit(getMessage());
+
+      threadInfo.breakTransition("budgetConstraint");
+      terminateSearch();
+    }
+  }
+
+  /**
+   * Counts a new object for its class and adds it to the SUT heap usage,
+   * and terminates the search once the allocations exceed budget.max_alloc
+   * or budget.max_alloc_per_class or the SUT heap grows past budget.max_sut_heap
+   * 
+   * @param vm JPF VM related to the current model check
+   * @param threadInfo The thread that created the object
+   * @param elementInfo The new object
+   */
+  @Override
+  public void objectCreated (VM vm, ThreadInfo threadInfo, ElementInfo elementInfo) {
+    if (allocCounts != null) {
+      countAlloc(threadInfo, elementInfo);
+    }
+
+    if (sutHeap != null) {
+      long before = sutHeap.getLiveBytes();
+      long after = sutHeap.created(elementInfo.getHeapSize());
+
+      // only report when the budget is crossed, not for every following object
+      if (after > maxSutHeap && before <= maxSutHeap) {
+        exceeded = SUT_HEAP_EXCEEDED;
+        exceededValue = after;
+        search.notifySearchConstraintHit(getMessage());
+
+        threadInfo.breakTransition("budgetConstraint");
+        terminateSearch();
+      }
+    }
+  }
+
+  /**
+   * Breaks the current transition once it exceeded budget.max_insn_per_transition
+   * and ignores the state it leads to, so the search backtracks past it and goes
+   * on with the rest of the state space instead of terminating
+   * 
+   * @param vm JPF VM related to the current model check
+   * @param threadInfo The thread that is running the transition
+   */
+  private void pruneTransition (VM vm, ThreadInfo threadInfo) {
+    if (prunedTransitions++ == 0) {
+      log.warning("max instruction count per transition exceeded: " + maxInsnPerTransition
+                  + " in thread " + threadInfo.getName() + ", pruning transition");
+    }
+
+    threadInfo.breakTransition("budgetConstraint");
+    vm.ignoreState();
+  }
+
+  /**
+   * Counts an allocation for the class of the new object and terminates the
+   * search if the allocations exceed budget.max_alloc or budget.max_alloc_per_class.
+   * This only happens once per budget since the counts only grow.
+   * 
+   * @param threadInfo The thread that created the object
+   * @param elementInfo The new object
+   */
+  private void countAlloc (ThreadInfo threadInfo, ElementInfo elementInfo) {
+    ClassInfo ci = elementInfo.getClassInfo();
+    long count = allocCounts.increment(ci);
+    long total = allocCounts.getTotal();
+
+    if (maxAlloc > 0 && total == maxAlloc + 1) {
+      exceeded = ALLOC_EXCEEDED;
+      exceededValue = total;
+    } else if (maxAllocPerClass > 0 && count == maxAllocPerClass + 1) {
+      exceeded = CLASS_ALLOC_EXCEEDED;
+      exceededValue = count;
+      exceededClass = ci;
+    } else {
+      return;
+    }
+
+    search.notifySearchConstraintHit(getMessage());
+    threadInfo.breakTransition("budgetConstraint");
+    terminateSearch();
+  }
+
+  /**
+   * Counts a new choice generator and terminates the search once more than
+   * budget.max_cg are registered, if budget.cg_action is terminate
+   * 
+   * @param vm JPF VM related to the current model check
+   * @param cg The new choice generator
+   * @param threadInfo The thread that registered the choice generator
+   * @param executedInsn The instruction that registered the choice generator
+   */
+  @Override
+  public void choiceGeneratorRegistered (VM vm, ChoiceGenerator<?> cg, ThreadInfo threadInfo, Instruction executedInsn) {
+    if (cgCounts != null) {
+      long count = cgCounts.registered(ChoiceGeneratorCounts.getCategory(cg));
+
+      if (maxCg > 0 && count == maxCg + 1 && cgAction == CgAction.TERMINATE) {
+        exceeded = CG_EXCEEDED;
+        exceededValue = count;
+        search.notifySearchConstraintHit(getMessage());
+        terminateSearch();
+      }
+    }
+  }
+
+  /**
+   * Counts a choice and enforces budget.max_choices_per_cg.&lt;type&gt; and
+   * budget.max_cg. With budget.cg_action prune, a choice generator that
+   * reached its limit, or any choice generator once more than max_cg are
+   * registered, is done after the current choice, and the first prune is
+   * reported as a search constraint. Otherwise the search is
+   * terminated before a choice over the limit is explored.
+   * 
+   * @param vm JPF VM related to the current model check
+   * @param cg The choice generator that advanced to its next choice
+   */
+  @Override
+  public void choiceGeneratorAdvanced (VM vm, ChoiceGenerator<?> cg) {
+    if (cgCounts != null) {
+      int category = ChoiceGeneratorCounts.getCategory(cg);
+      cgCounts.advanced(category);
+
+      int processed = cg.getProcessedNumberOfChoices();
+      int limit = cgCounts.getLimit(category);
+      if (cgAction == CgAction.PRUNE) {
+        if ((limit > 0 && processed >= limit) || (maxCg > 0 && cgCounts.getTotal() > maxCg)) {
+          cgCounts.pruned(category, cg.getTotalNumberOfChoices() - processed);
+          cg.setDone();
+
+          if (!cgPruned) {
+            cgPruned = true;
+            exceeded = CG_PRUNED;
+            exceededCgCategory = category;
+            search.notifySearchConstraintHit(getMessage());
+          }
+        }
+      } else if (limit > 0 && processed > limit) {
+        exceeded = CG_CHOICES_EXCEEDED;
+        exceededValue = processed;
+        exceededCgCategory = category;
+        search.notifySearchConstraintHit(getMessage());
+        terminateSearch();
+      }
+    }
+  }
+
+  /**
+   * Removes a garbage collected object from the SUT heap usage
+   * 
+   * @param vm JPF VM related to the current model check
+   * @param threadInfo The thread that was running when the object was collected
+   * @param elementInfo The collected object
+   */
+  @Override
+  public void objectReleased (VM vm, ThreadInfo threadInfo, ElementInfo elementInfo) {
+    if (sutHeap != null) {
+      sutHeap.released(elementInfo.getHeapSize());
+    }
+  }
+
+  /**
+   * Puts back the SUT heap usage of the state the search backtracked to,
+   * if budget.max_sut_heap is set, counts the backtrack for the forecast
+   * and the resumed checkpoint and starts counting the instructions of the next transition
+   * 
+   * @param search Search object corresponding to the current search thats running
+   */
+  @Override
+  public void stateBacktracked (Search search) {
+    transitionInsns = 0;
+    if (sutHeap != null) {
+      sutHeap.stateBacktracked(search.getDepth());
+    }
+    if (status != null) {
+      status.updatePosition(search.getDepth(), vm.getStateId());
+    }
+    if (resume != null) {
+      resume.backtracked(search.getDepth());
+    }
+    if (forecast != null) {
+      forecast.stateBacktracked();
+    }
+  }
+
+  /**
+   * Method that updates the forecast and checks if the estimated time to
+   * completion exceeds the time left by more than budget.forecast_abort_factor.
+   * The ETA is logged with every forecast.
+   * 
+   * @return true if the search can't finish within budget, false otherwise
+   *    - If budget.forecast_abort_factor or budget.max_time is not set, returns false
+   */
+  private boolean forecastExceeded () {
+    long now = System.currentTimeMillis();
+    if (now < nextForecastTime || forecast.getNewStates() < MIN_FORECAST_STATES) {
+      return false;
+    }
+    nextForecastTime = now + forecastInterval;
+
+    long elapsed = now - startTime;
+    long eta = forecast.update(vm.getChoiceGenerator(), search.getDepth(), elapsed);
+    log.warning("budget forecast: " + (long) forecast.getRemainingStates() + " states left, ETA "
+                + Publisher.formatHMS(eta));
+
+    if (forecastAbortFactor > 0 && maxTime > 0) {
+      forecastRemainingTime = maxTime - elapsed;
+      if (eta > forecastAbortFactor * forecastRemainingTime) {
+        exceeded = FORECAST_EXCEEDED;
+        exceededValue = eta;
+        return true;
+      }
+    }
+
+    return false;
+  }
+
+  /**
+   * Method that checks if the share of new states among the last
+   * budget.new_state_window state advances dropped below the limit
+   * specified in the configuration file
+   * 
+   * @return true if the search mostly revisits known states, false otherwise
+   *    - If budget.min_new_state_ratio is not set or the window isn't full yet, returns false
+   */
+  private boolean newStateRatioExceeded () {
+    if (minNewStateRatio > 0 && revisits.isFull()) {
+      double ratio = revisits.getNewStateRatio();
+      if (ratio < minNewStateRatio) {
+        exceeded = NEW_STATE_RATIO_EXCEEDED;
+        exceededValue = (long) (ratio * revisits.getWindowSize());
+        return true;
+      }
+    }
+
+    return false;
+  }
+
+  /**
+   * Method that checks if the number of new states in a row that didn't
+   * cover any new instruction has exceeded the limit specified in the
+   * configuration file. Called once per new state.
+   * 
+   * @return true if the coverage has plateaued, false otherwise
+   *    - If budget.coverage_plateau_states is not set, returns false
+   */
+  private boolean coveragePlateauExceeded () {
+    if (coveragePlateauStates > 0) {
+      long covered = coverage.getCoveredInsns();
+      if (covered != lastCoveredInsns) {
+        lastCoveredInsns = covered;
+        statesWithoutCoverage = 0;
+      } else if (++statesWithoutCoverage > coveragePlateauStates) {
+        exceeded = COVERAGE_PLATEAU_EXCEEDED;
+        exceededValue = statesWithoutCoverage;
+        return true;
+      }
+    }
+
+    return false;
+  }
+
+  /**
+   * Method that draws the instructions executed since the last draw from the
+   * budget pool and checks if this search has to stop because the pool, or
+   * its share of it, is exhausted
+   * 
+   * @return true if the search has to stop, false otherwise
+   *    - If budget.pool is not set, returns false
+   */
+  private boolean poolExceeded () {
+    if (pool != null) {
+      pool.drawInsns(insnCount - poolDrawnInsns);
+      poolDrawnInsns = insnCount;
+
+      int budget = pool.check(insnCount, newStates, poolAction == PoolAction.GREEDY, poolFairShare);
+      if (budget != 0) {
+        exceeded = POOL_EXCEEDED;
+        exceededValue = budget;
+        return true;
+      }
+    }
+
+    return false;
+  }
+
+  /**
+   * Method that checks if the budget shared through budget.shared_file is
+   * exhausted, either by drawing the instructions, new states and heap used
+   * since the last draw or by only reading the termination flag
+   * 
+   * @param draw True to draw from the shared budget, which locks the file
+   * @return true if a shared budget is exhausted, false otherwise
+   *    - If budget.shared_file is not set, returns false
+   */
+  private boolean sharedBudgetExceeded (boolean draw) {
+    if (shared != null) {
+      int budget = shared.isTerminated() ? SharedBudgetFile.TERMINATED : 0;
+      if (draw && budget == 0) {
+        Runtime rt = Runtime.getRuntime();
+        long heap = rt.totalMemory() - rt.freeMemory();
+        try {
+          budget = shared.draw(insnCount - sharedDrawnInsns, newStates - sharedDrawnStates, heap - sharedHeap,
+                               sharedMaxInsn, sharedMaxState, sharedMaxHeap);
+          sharedDrawnInsns = insnCount;
+          sharedDrawnStates = newStates;
+          sharedHeap = heap;
+        } catch (IOException x) {
+          log.warning("could not update shared budget " + shared.getFileName() + ": " + x.getMessage());
+        }
+      }
+
+      if (budget != 0) {
+        exceeded = SHARED_EXCEEDED;
+        exceededValue = budget;
+        return true;
+      }
+    }
+
+    return false;
+  }
+
+  /**
+   * Reads the soft limit of a budget from budget.max_*.soft
+   * 
+   * @param conf Information contained in the configuration file
+   * @param key The key of the hard limit
+   * @param hard The hard limit, 0 if not set
+   * @return the soft limit, 0 if not set
+   */
+  private static long getSoftLimit (Config conf, String key, long hard) {
+    String softKey = key + ".soft";
+    String value = conf.getString(softKey);
+    if (value == null || value.trim().isEmpty()) {
+      return 0;
+    }
+
+    long absolute = 0;
+    if (!value.trim().endsWith("%")) {
+      if (key.equals("budget.max_time")) {
+        absolute = conf.getDuration(softKey, 0);
+      } else if (key.equals("budget.max_heap")) {
+        absolute = conf.getMemorySize(softKey, 0);
+      } else {
+        absolute = conf.getLong(softKey, 0);
+      }
+    }
+    return SoftLimits.parse(softKey, value, hard, absolute);
+  }
+
+  /**
+   * Terminates the search because a budget was exceeded
+   */
+  private void terminateSearch () {
+    if (checkpointFile != null && !terminated) {
+      // the choices on the current path, everything on their left is explored
+      checkpointPath = SearchCheckpoint.capture(vm.getChoiceGenerator());
+    }
+    terminated = true;
+    search.terminate();
+  }
+
+  /**
+   * @return true if the search was terminated because a budget was exceeded
+   */
+  public boolean isTerminated () {
+    return terminated;
+  }
+
+  /**
+   * @return the message for the budget that terminated the search, null if it wasn't terminated
+   */
+  public String getTerminationMessage () {
+    return terminated ? getMessage() : null;
+  }
+
+  /**
+   * @return the deepest search depth reached so far
+   */
+  public int getMaxDepthReached () {
+    return maxDepthReached;
+  }
+
+  /**
+   * Registers a listener that is notified when a soft limit is reached
+   * and budget.soft_action includes notify
+   * 
+   * @param listener The listener to add
+   */
+  public void addBudgetListener (BudgetListener listener) {
+    budgetListeners.add(listener);
+  }
+
+  /**
+   * Checks the soft limits of the budgets that are polled at this point
+   * 
+   * @param stateLimits True if called from stateAdvanced, which also checks depth, states and new states
+   */
+  private void checkSoftLimits (boolean stateLimits) {
+    SoftLimits soft = softLimits;
+
+    if (soft.isSet(TIME_EXCEEDED)) {
+      long duration = System.currentTimeMillis() - startTime;
+      if (soft.reached(TIME_EXCEEDED, duration)) {
+        softLimitReached(TIME_EXCEEDED, duration, maxTime);
+      }
+    }
+    if (soft.isSet(HEAP_EXCEEDED)) {
+      long used = memoryBean.getHeapMemoryUsage().getUsed() - startingMemoryUsage;
+      if (soft.reached(HEAP_EXCEEDED, used)) {
+        softLimitReached(HEAP_EXCEEDED, used, maxHeap);
+      }
+    }
+    if (soft.reached(INSN_EXCEEDED, insnCount)) {
+      softLimitReached(INSN_EXCEEDED, insnCount, maxInsn);
+    }
+
+    if (stateLimits) {
+      int depth = search.getDepth();
+      if (soft.reached(DEPTH_EXCEEDED, depth)) {
+        softLimitReached(DEPTH_EXCEEDED, depth, maxDepth);
+      }
+      int stateId = vm.getStateId();
+      if (soft.reached(STATES_EXCEEDED, stateId)) {
+        softLimitReached(STATES_EXCEEDED, stateId, maxState);
+      }
+      if (soft.reached(NEW_STATES_EXCEEDED, newStates)) {
+        softLimitReached(NEW_STATES_EXCEEDED, newStates, maxNewStates);
+      }
+    }
+  }
+
+  /**
+   * Takes the actions set through budget.soft_action for a soft limit that was reached
+   * 
+   * @param budget The budget whose soft limit was reached
+   * @param value The current value of the budget
+   * @param hard The hard limit of the budget, 0 if not set
+   */
+  private void softLimitReached (int budget, long value, long hard) {
+    String name = getBudgetName(budget);
+    long soft = softLimits.get(budget);
+
+    if ((softActions & SOFT_LOG) != 0) {
+      log.warning("soft limit reached: " + name + " " + formatBudget(budget, value) + " >= "
+                  + formatBudget(budget, soft) + ((hard > 0) ? " (hard limit " + formatBudget(budget, hard) + ")" : ""));
+    }
+    if ((softActions & SOFT_STATS) != 0) {
+      Runtime rt = Runtime.getRuntime();
+      log.warning("budget consumption: time " + Publisher.formatHMS(System.currentTimeMillis() - startTime)
+                  + ", heap " + (rt.totalMemory() - rt.freeMemory()) + " bytes"
+                  + ", depth " + search.getDepth()
+                  + ", instructions " + insnCount
+                  + ", states " + vm.getStateId()
+                  + ", new states " + newStates);
+    }
+    if ((softActions & SOFT_GC) != 0) {
+      System.gc();
+    }
+    if ((softActions & SOFT_NOTIFY) != 0) {
+      for (BudgetListener listener : budgetListeners) {
+        listener.softLimitReached(this, name, value, soft, hard);
+      }
+    }
+  }
+
+  /**
+   * @return the name of a budget as used in the constraint messages
+   */
+  private static String getBudgetName (int budget) {
+    switch (budget) {
+      case TIME_EXCEEDED:
+        return "max time";
+      case HEAP_EXCEEDED:
+        return "max heap";
+      case DEPTH_EXCEEDED:
+        return "max search depth";
+      case INSN_EXCEEDED:
+        return "max instruction count";
+      case STATES_EXCEEDED:
+        return "max states";
+      case NEW_STATES_EXCEEDED:
+        return "max new state count";
+      default:
+        return "budget";
+    }
+  }
+
+  /**
+   * @return a budget value in the units of the budget
+   */
+  private static String formatBudget (int budget, long value) {
+    switch (budget) {
+      case TIME_EXCEEDED:
+        return Publisher.formatHMS(value);
+      case HEAP_EXCEEDED:
+        return value + " bytes";
+      default:
+        return Long.toString(value);
+    }
+  }
+
+  /**
+   * Records the name of a new thread for the per thread instruction report
+   * 
+   * @param vm JPF VM related to the current model check
+   * @param threadInfo The thread that was started
+   */
+  @Override
+  public void threadStarted (VM vm, ThreadInfo threadInfo) {
+    if (threadInsns != null) {
+      threadInsns.setName(threadInfo.getId(), threadInfo.getName());
+    }
+  }
+
+  /**
+   * Publishes the per thread instruction counts, the method hotspots, the
+   * stack samples, the SUT heap usage, the allocations, the budget consumption
+   * samples, the pruned transitions, the states per depth, the revisited
+   * states, the coverage, the choice generator counts and the last forecast
+   * at the end of the search, if they are enabled
+   * 
+   * @param publisher The publisher creating the JPF report
+   */
+  @Override
+  public void publishFinished (Publisher publisher) {
+    PrintWriter pw = publisher.getOut();
+
+    if (threadInsns != null) {
+      publisher.publishTopicStart("budget instructions per thread");
+      threadInsns.publish(pw, maxInsnPerThread);
+    }
+
+    if (methodInsns != null) {
+      publisher.publishTopicStart("budget method hotspots");
+      methodInsns.publish(pw, methodProfileSize, insnCount);
+    }
+
+    if (sutHeap != null) {
+      publisher.publishTopicStart("budget SUT heap");
+      sutHeap.publish(pw, maxSutHeap);
+    }
+
+    if (timeSeries != null) {
+      publisher.publishTopicStart("budget consumption");
+      timeSeries.publish(pw, recordRows);
+    }
+
+    if (prunedTransitions > 0) {
+      publisher.publishTopicStart("budget pruned transitions");
+      pw.println("max instructions per transition: " + maxInsnPerTransition);
+      pw.println("pruned transitions: " + prunedTransitions);
+    }
+
+    if (depthHistogram != null) {
+      publisher.publishTopicStart("budget states per depth");
+      depthHistogram.publish(pw);
+    }
+
+    if (revisits != null) {
+      publisher.publishTopicStart("budget revisited states");
+      revisits.publish(pw, revisitProfileSize, minNewStateRatio);
+    }
+
+    if (stackSampler != null) {
+      publisher.publishTopicStart("budget stack samples");
+      stackSampler.publish(pw, stackProfileSize);
+    }
+
+    if (publishAllocs) {
+      publisher.publishTopicStart("budget allocations");
+      allocCounts.publish(pw, allocProfileSize);
+    }
+
+    if (coverage != null) {
+      publisher.publishTopicStart("budget coverage");
+      coverage.publish(pw, coverageProfileSize);
+    }
+
+    if (cgCounts != null) {
+      publisher.publishTopicStart("budget choice generators");
+      cgCounts.publish(pw, maxCg);
+    }
+
+    if (forecast != null) {
+      publisher.publishTopicStart("budget forecast");
+      pw.println("new states:         " + forecast.getNewStates());
+      pw.println("backtracks:         " + forecast.getBacktracks());
+      pw.println("states left:        " + (long) forecast.getRemainingStates());
+      pw.println("last ETA:           " + Publisher.formatHMS(forecast.getETA()));
+    }
+  }
+
+  /**
+   * Runs only the instruction based budget checks that were enabled
+   * in the configuration file, in the same order as before:
+   * time, heap and then instruction count, followed by CPU and GC time.
+   * 
+   * @return true if one of the enabled budgets has exceeded, false otherwise
+   */
+  private boolean insnBudgetExceeded() {
+    int checks = polledChecks;
+    return ((checks & CHECK_TIME) != 0 && timeExceeded())
+        || ((checks & CHECK_HEAP) != 0 && heapExceeded())
+        || ((checks & CHECK_INSN) != 0 && insnExceeded())
+        || ((checks & CHECK_CPU) != 0 && cpuTimeExceeded())
+        || ((checks & CHECK_GC) != 0 && gcTimeExceeded());
+  }
+  
   /** 
    * Anytime the state advances, this method checks if
    * the time, heap, state count, depth or new state count
@@ -295,18 +2167,72 @@ public class BudgetChecker extends ListenerAdapter {
    */
   @Override
   public void stateAdvanced (Search search) {
-    if (timeExceeded() || heapExceeded()) {
-      search.notifySearchConstraintHit(message);
-      search.terminate();
+    transitionInsns = 0;
+    if (search.getDepth() > maxDepthReached) {
+      maxDepthReached = search.getDepth();
+    }
+    if (sutHeap != null) {
+      sutHeap.stateAdvanced(search.getDepth());
+    }
+    if (status != null) {
+      status.updatePosition(search.getDepth(), vm.getStateId());
+    }
+
+    // states explored before the checkpoint we resumed from are skipped right away
+    if (resume != null && resume.isExplored(search.getDepth() - 1, vm.getChoiceGenerator())) {
+      search.requestBacktrack();
+      return;
+    }
+
+    int checks = polledChecks;
+    boolean resourceExceeded = asyncBudgetExceeded()
+        || ((checks & CHECK_TIME) != 0 && timeExceeded())
+        || ((checks & CHECK_HEAP) != 0 && heapExceeded())
+        || ((checks & CHECK_CPU) != 0 && cpuTimeExceeded())
+        || ((checks & CHECK_GC) != 0 && gcTimeExceeded())
+        || sharedBudgetExceeded(false);
+    if (resourceExceeded) {
+      search.notifySearchConstraintHit(getMessage());
+      terminateSearch();
     }
     
     if (search.isNewState()){
       if (!vm.isTraceReplay()){
         newStates++;
+        if (pool != null) {
+          pool.drawState();
+        }
       }
-      if (statesExceeded() || depthExceeded() || newStatesExceeded()){
-        search.notifySearchConstraintHit(message);
-        search.terminate();        
+      if (status != null) {
+        status.updateNewStates(newStates);
+      }
+      if (statesExceeded() || depthExceeded() || newStatesExceeded() || coveragePlateauExceeded() || poolExceeded()){
+        search.notifySearchConstraintHit(getMessage());
+        terminateSearch();
+      }
+    }
+
+    if (depthHistogram != null) {
+      depthHistogram.stateAdvanced(search.getDepth(), search.isNewState());
+    }
+
+    if (revisits != null) {
+      revisits.stateAdvanced(vm.getStateId(), search.isNewState());
+      if (newStateRatioExceeded()) {
+        search.notifySearchConstraintHit(getMessage());
+        terminateSearch();
+      }
+    }
+
+    if (softLimits != null) {
+      checkSoftLimits(true);
+    }
+
+    if (forecast != null) {
+      forecast.stateAdvanced(search.getDepth(), search.isNewState());
+      if (forecastExceeded()) {
+        search.notifySearchConstraintHit(getMessage());
+        terminateSearch();
       }
     }
   }
@@ -328,16 +2254,56 @@ public class BudgetChecker extends ListenerAdapter {
    */
   @Override
   public void instructionExecuted (VM vm, ThreadInfo threadInfo, Instruction nextInsn, Instruction executedInsn) {
+    if (threadInsns != null) {
+      countThreadInsn(threadInfo);
+    }
+    if (methodInsns != null) {
+      countMethodInsn(threadInfo, executedInsn);
+    }
+    if (coverage != null) {
+      coverage.cover(executedInsn);
+    }
+    if (maxInsnPerTransition > 0 && ++transitionInsns == maxInsnPerTransition + 1) {
+      pruneTransition(vm, threadInfo);
+    }
+
+    // Checks every CHECK_INTERVAL instructions excecuted. nextCheckInsn is never reached if no
+    // instruction based or asynchronous budget or soft limit is set and nothing is recorded or exposed
+    if (++insnCount >= nextCheckInsn) {
+      if (checkPeriod > 0) {
+        adaptCheckInterval();
+      }
+      nextCheckInsn += checkInterval;
+
+      // With budget.watchdog or budget.heap_notifications set, time and heap only cost a read of the reference
+      // at every check, and so does budget.max_gc_overhead
+      if (asyncBudgetExceeded()) {
+        search.notifySearchConstraintHit(getMessage());
 
-    // Checks every CHECK_INTERVAL instructions excecuted
-    insnCount++;
+        vm.getCurrentThread().breakTransition("budgetConstraint");
+        terminateSearch();
+        return;
+      }
+
+      if (timeSeries != null) {
+        recordSample();
+      }
+      if (stackSampler != null && --checksToSample == 0) {
+        checksToSample = stackSampleInterval;
+        stackSampler.sample(threadInfo);
+      }
+      if (status != null) {
+        status.updateInsns(insnCount, memoryBean.getHeapMemoryUsage().getUsed() - startingMemoryUsage);
+      }
+      if (softLimits != null) {
+        checkSoftLimits(false);
+      }
 
-    if ((insnCount % checkInterval) == 0) {
-      if (timeExceeded() || heapExceeded() || insnExceeded()) {
-        search.notifySearchConstraintHit(message);
+      if (insnBudgetExceeded() || poolExceeded() || sharedBudgetExceeded(true)) {
+        search.notifySearchConstraintHit(getMessage());
 
         vm.getCurrentThread().breakTransition("budgetConstraint");
-        search.terminate();
+        terminateSearch();
       }    
     }
   }
@@ -0,0 +1,41 @@
+/**
+ * Management interface of the BudgetChecker, registered in the platform
+ * MBeanServer when budget.jmx is set so the budget consumption of a
+ * running search can be watched with jconsole or any other JMX client.
+ *
+ * Limits that are not set are reported as 0, and their percentage as -1.
+ */
+public interface BudgetCheckerMXBean {
+
+  // the configured limits
+
+  long getMaxTime ();
+  long getMaxHeap ();
+  int getMaxDepth ();
+  long getMaxInsn ();
+  int getMaxState ();
+  int getMaxNewStates ();
+
+  // the current consumption
+
+  long getElapsedTime ();
+  long getHeapUsed ();
+  int getDepth ();
+  long getInsnCount ();
+  int getStates ();
+  int getNewStates ();
+
+  // percentage of each limit used so far
+
+  double getTimePercent ();
+  double getHeapPercent ();
+  double getDepthPercent ();
+  double getInsnPercent ();
+  double getStatesPercent ();
+  double getNewStatesPercent ();
+
+  // rates over the last second
+
+  long getInsnPerSecond ();
+  long getStatesPerSecond ();
+}
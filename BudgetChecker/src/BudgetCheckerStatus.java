@@ -0,0 +1,222 @@
+import java.lang.management.ManagementFactory;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * The BudgetCheckerMXBean of a single BudgetChecker.
+ *
+ * The listener publishes its counters with plain volatile writes from the
+ * search thread, and the JMX client reads them from its own thread, so
+ * nothing on the search side ever blocks.
+ */
+class BudgetCheckerStatus implements BudgetCheckerMXBean {
+
+  // rates are computed over windows of at least this length [msec]
+  private static final long RATE_WINDOW = 1000;
+
+  // number of instances, used to give every MBean a unique name
+  private static int instances;
+
+  private final long startTime;
+
+  private final long maxTime;
+  private final long maxHeap;
+  private final int maxDepth;
+  private final long maxInsn;
+  private final int maxState;
+  private final int maxNewStates;
+
+  private volatile long heapUsed;
+  private volatile int depth;
+  private volatile long insnCount;
+  private volatile int states;
+  private volatile int newStates;
+
+  private volatile long insnPerSecond;
+  private volatile long statesPerSecond;
+
+  // start of the current rate window, only used by the search thread
+  private long windowStart;
+  private long windowInsns;
+  private int windowStates;
+
+  private ObjectName name;
+
+  BudgetCheckerStatus (long startTime, long maxTime, long maxHeap, int maxDepth,
+                       long maxInsn, int maxState, int maxNewStates) {
+    this.startTime = startTime;
+    this.maxTime = maxTime;
+    this.maxHeap = maxHeap;
+    this.maxDepth = maxDepth;
+    this.maxInsn = maxInsn;
+    this.maxState = maxState;
+    this.maxNewStates = maxNewStates;
+    this.windowStart = startTime;
+  }
+
+  /**
+   * Registers the MBean in the platform MBeanServer
+   */
+  void register () throws Exception {
+    synchronized (BudgetCheckerStatus.class) {
+      name = new ObjectName("gov.nasa.jpf:type=BudgetChecker,name=BudgetChecker-" + instances++);
+    }
+    MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+    server.registerMBean(this, name);
+  }
+
+  /**
+   * @return the name the MBean is registered under, null if it isn't registered
+   */
+  ObjectName getName () {
+    return name;
+  }
+
+  /**
+   * Removes the MBean from the platform MBeanServer
+   */
+  void unregister () throws Exception {
+    if (name != null) {
+      ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
+      name = null;
+    }
+  }
+
+  /**
+   * Publishes the instruction count and host heap, called at every instructionExecuted check
+   */
+  void updateInsns (long insnCount, long heapUsed) {
+    this.insnCount = insnCount;
+    this.heapUsed = heapUsed;
+
+    long now = System.currentTimeMillis();
+    long dt = now - windowStart;
+    if (dt >= RATE_WINDOW) {
+      insnPerSecond = (insnCount - windowInsns) * 1000 / dt;
+      statesPerSecond = (states - windowStates) * 1000L / dt;
+      windowStart = now;
+      windowInsns = insnCount;
+      windowStates = states;
+    }
+  }
+
+  /**
+   * Publishes the depth and state id of the search, called from stateAdvanced and stateBacktracked
+   */
+  void updatePosition (int depth, int states) {
+    this.depth = depth;
+    this.states = states;
+  }
+
+  /**
+   * Publishes the new state count, called from stateAdvanced for new states
+   */
+  void updateNewStates (int newStates) {
+    this.newStates = newStates;
+  }
+
+  private static double percent (double used, double max) {
+    return (max > 0) ? (100.0 * used / max) : -1;
+  }
+
+  @Override
+  public long getMaxTime () {
+    return maxTime;
+  }
+
+  @Override
+  public long getMaxHeap () {
+    return maxHeap;
+  }
+
+  @Override
+  public int getMaxDepth () {
+    return maxDepth;
+  }
+
+  @Override
+  public long getMaxInsn () {
+    return maxInsn;
+  }
+
+  @Override
+  public int getMaxState () {
+    return maxState;
+  }
+
+  @Override
+  public int getMaxNewStates () {
+    return maxNewStates;
+  }
+
+  @Override
+  public long getElapsedTime () {
+    return System.currentTimeMillis() - startTime;
+  }
+
+  @Override
+  public long getHeapUsed () {
+    return heapUsed;
+  }
+
+  @Override
+  public int getDepth () {
+    return depth;
+  }
+
+  @Override
+  public long getInsnCount () {
+    return insnCount;
+  }
+
+  @Override
+  public int getStates () {
+    return states;
+  }
+
+  @Override
+  public int getNewStates () {
+    return newStates;
+  }
+
+  @Override
+  public double getTimePercent () {
+    return percent(getElapsedTime(), maxTime);
+  }
+
+  @Override
+  public double getHeapPercent () {
+    return percent(heapUsed, maxHeap);
+  }
+
+  @Override
+  public double getDepthPercent () {
+    return percent(depth, maxDepth);
+  }
+
+  @Override
+  public double getInsnPercent () {
+    return percent(insnCount, maxInsn);
+  }
+
+  @Override
+  public double getStatesPercent () {
+    return percent(states, maxState);
+  }
+
+  @Override
+  public double getNewStatesPercent () {
+    return percent(newStates, maxNewStates);
+  }
+
+  @Override
+  public long getInsnPerSecond () {
+    return insnPerSecond;
+  }
+
+  @Override
+  public long getStatesPerSecond () {
+    return statesPerSecond;
+  }
+}
@@ -1,10 +1,20 @@
 import java.io.ByteArrayOutputStream;
+import java.io.File;
 import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.util.HashSet;
 import java.util.Random;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
 
 import org.junit.Test;
 
 import gov.nasa.jpf.util.test.TestJPF;
+import gov.nasa.jpf.vm.Verify;
 
 /**
  * This BudgetCheckerTest is used to test different parameters for the BudgetChecker listener in JPF. 
@@ -32,6 +42,22 @@ public class BudgetCheckerTest extends TestJPF {
 	private static final String MAX_INSTRUCTION_REACHED = "max instruction count exceeded";
 	private static final String MAX_STATES_REACHED = "max states exceeded";
 	private static final String MAX_NEW_STATES_REACHED = "max new state count exceeded";
+	private static final String MAX_THREAD_INSTRUCTION_REACHED = "max instruction count per thread exceeded";
+	private static final String MAX_METHOD_INSTRUCTION_REACHED = "max instruction count per method exceeded";
+	private static final String MAX_SUT_HEAP_REACHED = "max SUT heap exceeded";
+	private static final String FORECAST_REACHED = "budget forecast exceeded";
+	private static final String MAX_CG_CHOICES_REACHED = "max choices per choice generator exceeded";
+	private static final String NEW_STATE_RATIO_REACHED = "min new state ratio exceeded";
+	private static final String COVERAGE_PLATEAU_REACHED = "coverage plateau exceeded";
+	private static final String MAX_ALLOC_REACHED = "max allocation count exceeded";
+	private static final String MAX_CPU_TIME_REACHED = "max CPU time exceeded";
+	private static final String MAX_GC_TIME_REACHED = "max GC time exceeded";
+	private static final String MAX_GC_OVERHEAD_REACHED = "max GC overhead exceeded";
+	private static final String POOL_REACHED = "budget pool";
+	private static final String SHARED_REACHED = "shared budget exhausted";
+	private static final String OTHER_THREAD_FINISHED = "other thread finished";
+	private static final String END_STATE_VALUE = "end state value ";
+	private static final String PRUNED_BRANCH_EXPLORED = "branch after pruned transition explored";
 	
 	// Definitions used to run a certain number of instructions. 
 	private static final int FEW_INSTRUCTIONS = 100;
@@ -40,6 +66,9 @@ public class BudgetCheckerTest extends TestJPF {
 	private static final int MEGABYTE = 1048576;
 	private static final int _90_MEGABYTES = 90 * MEGABYTE;
 	
+	// set by the other thread of the break test, the main thread spins on it
+	private static volatile boolean otherThreadRan;
+	
 	
 	// Values for properties to be used in multi property tests
 	private static final int MAX_TIME = 10000;
@@ -88,6 +117,31 @@ public class BudgetCheckerTest extends TestJPF {
 		}
 	}
 
+	/**
+	 * Application searched by the iterative deepening test, its state space is a few choices deep.
+	 */
+	public static class DeepeningTarget {
+		public static void main(String[] args) {
+			for (int i = 0; i < 4; i++) {
+				Verify.getBoolean();
+			}
+		}
+	}
+
+	/**
+	 * Application searched by the iterative deepening error test, it fails once it made three choices.
+	 */
+	public static class DeepeningErrorTarget {
+		public static void main(String[] args) {
+			for (int i = 0; i < 4; i++) {
+				Verify.getBoolean();
+				if (i == 2) {
+					throw new IllegalStateException("too deep");
+				}
+			}
+		}
+	}
+
 	/**
 	 * Resets all properties to their original values.
 	 */
@@ -1028,4 +1082,1147 @@ public class BudgetCheckerTest extends TestJPF {
 			TestJPF.assertTrue("Property was violated", stream.toString().contains(MAX_NEW_STATES_REACHED));
 		}
 	}
+	
+	/**
+	 * Tests that the watchdog thread reports a max time violation on a longer execution
+	 */
+	@Test
+	public void testWatchdogMaxTimeViolation() {
+		resetProperties();
+		PROPERTIES[4] = "+budget.max_time=1";
+		PROPERTIES[5] = "+budget.watchdog=true";
+		PROPERTIES[6] = "+budget.watchdog_period=1";
+		
+		PrintStream out = null;
+		ByteArrayOutputStream stream = null;
+		
+		if (!TestJPF.isJPFRun()) {
+			out = System.out;
+			stream = new ByteArrayOutputStream();
+			System.setOut(new PrintStream(stream));
+		}
+		
+		if (this.verifyNoPropertyViolation(PROPERTIES)) {
+			int manyExecutions = 1000;
+			for(int i = 0; i < manyExecutions; i++) basicExecution();
+		} else {
+			System.setOut(out);
+			TestJPF.assertTrue("Property was violated", stream.toString().contains(MAX_TIME_REACHED));
+		}
+	}
+	
+	/**
+	 * Tests that the watchdog thread does not report a max time violation with a simple execution
+	 */
+	@Test
+	public void testWatchdogMaxTimeNoViolation() {
+		resetProperties();
+		PROPERTIES[4] = "+budget.max_time=3000";
+		PROPERTIES[5] = "+budget.watchdog=true";
+		
+		PrintStream out = null;
+		ByteArrayOutputStream stream = null;
+		
+		if (!TestJPF.isJPFRun()) {
+			out = System.out;
+			stream = new ByteArrayOutputStream();
+			System.setOut(new PrintStream(stream));
+		}
+		
+		if (this.verifyNoPropertyViolation(PROPERTIES)) {
+			basicExecution();
+		} else {
+			System.setOut(out);
+			TestJPF.assertTrue("Property was violated", !stream.toString().contains(MAX_TIME_REACHED));
+		}
+	}
+	
+	/**
+	 * Tests that an adaptive check_interval still finds a max instruction violation
+	 * when executing many instructions.
+	 */
+	@Test
+	public void testAdaptiveCheckIntervalViolation() {
+		resetProperties();
+		PROPERTIES[4] = "+budget.max_insn=99";
+		PROPERTIES[5] = "+budget.check_period=1";
+		PROPERTIES[6] = "+budget.min_check_interval=100";
+		PROPERTIES[7] = "+budget.max_check_interval=100";
+		
+		PrintStream out = null;
+		ByteArrayOutputStream stream = null;
+		
+		if (!TestJPF.isJPFRun()) {
+			out = System.out;
+			stream = new ByteArrayOutputStream();
+			System.setOut(new PrintStream(stream));
+		}
+		
+		if (this.verifyNoPropertyViolation(PROPERTIES)) {
+			for (int i = 0; i <= MANY_INSTRUCTIONS; i++);
+		} else {
+			System.setOut(out);
+			TestJPF.assertTrue("Property was violated", stream.toString().contains(MAX_INSTRUCTION_REACHED));
+		}
+	}
+	
+	/**
+	 * Tests that a max instruction per thread violation occurs when a thread executes many instructions.
+	 */
+	@Test
+	public void testMaxInstructionPerThreadViolationWithConcurrency() {
+		resetProperties();
+		PROPERTIES[4] = "+budget.max_insn_per_thread=" + SOME_INSTRUCTIONS;
+		
+		PrintStream out = null;
+		ByteArrayOutputStream stream = null;
+		
+		if (!TestJPF.isJPFRun()) {
+			out = System.out;
+			stream = new ByteArrayOutputStream();
+			System.setOut(new PrintStream(stream));
+		}
+		
+		if (this.verifyNoPropertyViolation(PROPERTIES)) {
+			for (int i = 0; i <= MANY_INSTRUCTIONS; i++);
+			concurrency();
+		} else {
+			System.setOut(out);
+			TestJPF.assertTrue("Property was violated", stream.toString().contains(MAX_THREAD_INSTRUCTION_REACHED));
+		}
+	}
+	
+	/**
+	 * Tests that the break action breaks the transition of a thread over its instruction budget only once.
+	 * The main thread goes over its budget and then spins until another thread sets a flag, so the other
+	 * thread only gets to run if the main thread is preempted, and the state space stays small.
+	 */
+	@Test
+	public void testMaxInstructionPerThreadBreak() {
+		resetProperties();
+		PROPERTIES[4] = "+budget.max_insn_per_thread=" + SOME_INSTRUCTIONS;
+		PROPERTIES[5] = "+budget.thread_insn_action=break";
+		
+		PrintStream out = null;
+		ByteArrayOutputStream stream = null;
+		
+		if (!TestJPF.isJPFRun()) {
+			out = System.out;
+			stream = new ByteArrayOutputStream();
+			System.setOut(new PrintStream(stream));
+		}
+		
+		if (this.verifyNoPropertyViolation(PROPERTIES)) {
+			otherThreadRan = false;
+			for (int i = 0; i <= MANY_INSTRUCTIONS; i++);
+			
+			new Thread() {
+				public void run() {
+					otherThreadRan = true;
+				}
+			}.start();
+			while (!otherThreadRan);
+			System.out.println(OTHER_THREAD_FINISHED);
+		} else {
+			System.setOut(out);
+			String output = stream.toString();
+			TestJPF.assertTrue("Property was not violated", output.contains(MAX_THREAD_INSTRUCTION_REACHED));
+			TestJPF.assertTrue("Other thread made no progress", output.contains(OTHER_THREAD_FINISHED));
+			
+			Matcher matcher = Pattern.compile("new=(\\d+)").matcher(output);
+			TestJPF.assertTrue("State statistics were not published", matcher.find());
+			TestJPF.assertTrue("Every instruction over the budget made a new state", Long.parseLong(matcher.group(1)) < SOME_INSTRUCTIONS / 2);
+		}
+	}
+	
+	/**
+	 * Tests that no max instruction per thread violation occurs when executing few instructions.
+	 */
+	@Test
+	public void testMaxInstructionPerThreadNoViolation() {
+		resetProperties();
+		PROPERTIES[4] = "+budget.max_insn_per_thread=" + (100 * MANY_INSTRUCTIONS);
+		PROPERTIES[5] = "+budget.thread_insn_action=report";
+		
+		PrintStream out = null;
+		ByteArrayOutputStream stream = null;
+		
+		if (!TestJPF.isJPFRun()) {
+			out = System.out;
+			stream = new ByteArrayOutputStream();
+			System.setOut(new PrintStream(stream));
+		}
+		
+		if (this.verifyNoPropertyViolation(PROPERTIES)) {
+			for (int i = 0; i <= FEW_INSTRUCTIONS; i++);
+		} else {
+			System.setOut(out);
+			TestJPF.assertTrue("Property was violated", !stream.toString().contains(MAX_THREAD_INSTRUCTION_REACHED));
+		}
+	}
+	
+	/**
+	 * Tests that a max instruction per method violation occurs on infinite recursion
+	 */
+	@Test
+	public void testMaxInstructionPerMethodViolation() {
+		resetProperties();
+		PROPERTIES[4] = "+budget.max_insn_per_method=" + SOME_INSTRUCTIONS;
+		
+		PrintStream out = null;
+		ByteArrayOutputStream stream = null;
+		
+		if (!TestJPF.isJPFRun()) {
+			out = System.out;
+			stream = new ByteArrayOutputStream();
+			System.setOut(new PrintStream(stream));
+		}
+		
+		if (this.verifyNoPropertyViolation(PROPERTIES)) {
+			badRecursion(true);
+		} else {
+			System.setOut(out);
+			TestJPF.assertTrue("Property was violated", stream.toString().contains(MAX_METHOD_INSTRUCTION_REACHED));
+		}
+	}
+	
+	/**
+	 * Tests that the method profile doesn't cause a max instruction per method violation
+	 */
+	@Test
+	public void testMethodProfileNoViolation() {
+		resetProperties();
+		PROPERTIES[4] = "+budget.method_profile=true";
+		PROPERTIES[5] = "+budget.method_profile_size=5";
+		
+		PrintStream out = null;
+		ByteArrayOutputStream stream = null;
+		
+		if (!TestJPF.isJPFRun()) {
+			out = System.out;
+			stream = new ByteArrayOutputStream();
+			System.setOut(new PrintStream(stream));
+		}
+		
+		if (this.verifyNoPropertyViolation(PROPERTIES)) {
+			basicExecution();
+		} else {
+			System.setOut(out);
+			TestJPF.assertTrue("Property was violated", !stream.toString().contains(MAX_METHOD_INSTRUCTION_REACHED));
+		}
+	}
+	
+	/**
+	 * Creates short lived arrays of a megabyte, each in its own transition so JPF
+	 * collects the previous one, which keeps the host JVM collecting garbage
+	 * @param count Number of arrays to create
+	 */
+	private void churn(int count) {
+		for (int i = 0; i < count; i++) {
+			int[] garbage = new int[MEGABYTE];
+			garbage[i % MEGABYTE] = i;
+			Verify.breakTransition("churn");
+		}
+	}
+	
+	/**
+	 * Creates objects that stay alive until the method returns
+	 * @param count Number of objects to create
+	 */
+	private void allocate(int count) {
+		Object[] objects = new Object[count];
+		for (int i = 0; i < count; i++) objects[i] = new int[SOME_INSTRUCTIONS];
+		System.out.println(objects.length);
+	}
+	
+	/**
+	 * Tests that the max SUT heap violation occurs on an allocation heavy program
+	 */
+	@Test
+	public void testMaxSutHeapViolation() {
+		resetProperties();
+		PROPERTIES[4] = "+budget.max_sut_heap=" + MEGABYTE;
+		
+		PrintStream out = null;
+		ByteArrayOutputStream stream = null;
+		
+		if (!TestJPF.isJPFRun()) {
+			out = System.out;
+			stream = new ByteArrayOutputStream();
+			System.setOut(new PrintStream(stream));
+		}
+		
+		if (this.verifyNoPropertyViolation(PROPERTIES)) {
+			allocate(FEW_INSTRUCTIONS * 10);
+		} else {
+			System.setOut(out);
+			TestJPF.assertTrue("Property was violated", stream.toString().contains(MAX_SUT_HEAP_REACHED));
+			// the allocations are counted for the message without budget.alloc_profile, but not published
+			TestJPF.assertTrue("Allocations not listed", stream.toString().contains("top allocations: "));
+			TestJPF.assertTrue("Allocations published", !stream.toString().contains("budget allocations"));
+		}
+	}
+	
+	/**
+	 * Tests that no max SUT heap violation occurs with a simple execution
+	 */
+	@Test
+	public void testMaxSutHeapNoViolation() {
+		resetProperties();
+		PROPERTIES[4] = "+budget.max_sut_heap=" + _90_MEGABYTES;
+		
+		PrintStream out = null;
+		ByteArrayOutputStream stream = null;
+		
+		if (!TestJPF.isJPFRun()) {
+			out = System.out;
+			stream = new ByteArrayOutputStream();
+			System.setOut(new PrintStream(stream));
+		}
+		
+		if (this.verifyNoPropertyViolation(PROPERTIES)) {
+			basicExecution();
+		} else {
+			System.setOut(out);
+			TestJPF.assertTrue("Property was violated", !stream.toString().contains(MAX_SUT_HEAP_REACHED));
+		}
+	}
+	
+	/**
+	 * Tests that no max heap violation occurs with heap notifications and a simple execution
+	 */
+	@Test
+	public void testHeapNotificationsNoViolation() {	
+		resetProperties();
+		PROPERTIES[4] = "+budget.max_heap=" + _90_MEGABYTES;
+		PROPERTIES[5] = "+budget.heap_notifications=true";
+		
+		PrintStream out = null;
+		ByteArrayOutputStream stream = null;
+		
+		if (!TestJPF.isJPFRun()) {
+			out = System.out;
+			stream = new ByteArrayOutputStream();
+			System.setOut(new PrintStream(stream));
+		}
+		
+		if (this.verifyNoPropertyViolation(PROPERTIES)) {
+			basicExecution();
+		} else {
+			System.setOut(out);
+			TestJPF.assertTrue("Property was violated", !stream.toString().contains(MAX_HEAP_REACHED));
+		}
+	}
+	
+	/**
+	 * Tests that the budget consumption samples are published in the report
+	 */
+	@Test
+	public void testRecordPublished() {
+		resetProperties();
+		PROPERTIES[4] = "+budget.record_size=" + FEW_INSTRUCTIONS;
+		PROPERTIES[5] = "+budget.check_interval=" + FEW_INSTRUCTIONS;
+		
+		PrintStream out = null;
+		ByteArrayOutputStream stream = null;
+		
+		if (!TestJPF.isJPFRun()) {
+			out = System.out;
+			stream = new ByteArrayOutputStream();
+			System.setOut(new PrintStream(stream));
+		}
+		
+		if (this.verifyNoPropertyViolation(PROPERTIES)) {
+			for (int i = 0; i <= MANY_INSTRUCTIONS; i++);
+		} else {
+			System.setOut(out);
+			TestJPF.assertTrue("Samples were not published", stream.toString().contains("budget consumption"));
+		}
+	}
+	
+	/**
+	 * Tests that exposing the budget through JMX doesn't cause a violation
+	 */
+	@Test
+	public void testJmxNoViolation() {
+		resetProperties();
+		PROPERTIES[4] = "+budget.jmx=true";
+		PROPERTIES[5] = "+budget.max_insn=" + (100 * MANY_INSTRUCTIONS);
+		
+		PrintStream out = null;
+		ByteArrayOutputStream stream = null;
+		
+		if (!TestJPF.isJPFRun()) {
+			out = System.out;
+			stream = new ByteArrayOutputStream();
+			System.setOut(new PrintStream(stream));
+		}
+		
+		if (this.verifyNoPropertyViolation(PROPERTIES)) {
+			basicExecution();
+		} else {
+			System.setOut(out);
+			TestJPF.assertTrue("Property was violated", !stream.toString().contains(MAX_INSTRUCTION_REACHED));
+		}
+	}
+	
+	/**
+	 * Tests that the MBean published through budget.jmx is registered, shows the published counters and
+	 * is removed again
+	 */
+	@Test
+	public void testJmxStatusAttributes() throws Exception {
+		if (!TestJPF.isJPFRun()) {
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			BudgetCheckerStatus status = new BudgetCheckerStatus(System.currentTimeMillis(), MAX_TIME, MEGABYTE, 0, MAX_INSN, MAX_STATE, 0);
+			status.register();
+			ObjectName name = status.getName();
+			TestJPF.assertTrue("MBean was not registered", server.isRegistered(name));
+			
+			status.updatePosition(2, MAX_STATE);
+			status.updateNewStates(1);
+			status.updateInsns(MAX_INSN / 2, MEGABYTE / 4);
+			
+			TestJPF.assertTrue("Instruction count not published", (Long) server.getAttribute(name, "InsnCount") == MAX_INSN / 2);
+			TestJPF.assertTrue("Heap not published", (Long) server.getAttribute(name, "HeapUsed") == MEGABYTE / 4);
+			TestJPF.assertTrue("Depth not published", (Integer) server.getAttribute(name, "Depth") == 2);
+			TestJPF.assertTrue("States not published", (Integer) server.getAttribute(name, "States") == MAX_STATE);
+			TestJPF.assertTrue("New states not published", (Integer) server.getAttribute(name, "NewStates") == 1);
+			
+			// a backtrack moves the position without touching the new state count
+			status.updatePosition(1, MAX_STATE - 1);
+			TestJPF.assertTrue("Backtracked depth not published", (Integer) server.getAttribute(name, "Depth") == 1);
+			TestJPF.assertTrue("Backtracked state not published", (Integer) server.getAttribute(name, "States") == MAX_STATE - 1);
+			TestJPF.assertTrue("New states changed", (Integer) server.getAttribute(name, "NewStates") == 1);
+			TestJPF.assertTrue("Limit not published", (Long) server.getAttribute(name, "MaxInsn") == MAX_INSN);
+			TestJPF.assertTrue("Instruction percentage wrong", (Double) server.getAttribute(name, "InsnPercent") == 50.0);
+			TestJPF.assertTrue("Heap percentage wrong", (Double) server.getAttribute(name, "HeapPercent") == 25.0);
+			TestJPF.assertTrue("Unset limit has a percentage", (Double) server.getAttribute(name, "DepthPercent") == -1.0);
+			
+			status.unregister();
+			TestJPF.assertTrue("MBean was not unregistered", !server.isRegistered(name));
+		}
+	}
+	
+	/**
+	 * Tests that the forecast doesn't stop a small search that can finish in time
+	 */
+	@Test
+	public void testForecastNoViolation() {
+		resetProperties();
+		PROPERTIES[4] = "+budget.forecast=true";
+		PROPERTIES[5] = "+budget.forecast_interval=1";
+		PROPERTIES[6] = "+budget.forecast_abort_factor=1";
+		PROPERTIES[7] = "+budget.max_time=" + MAX_TIME;
+		
+		PrintStream out = null;
+		ByteArrayOutputStream stream = null;
+		
+		if (!TestJPF.isJPFRun()) {
+			out = System.out;
+			stream = new ByteArrayOutputStream();
+			System.setOut(new PrintStream(stream));
+		}
+		
+		if (this.verifyNoPropertyViolation(PROPERTIES)) {
+			basicExecution();
+		} else {
+			System.setOut(out);
+			TestJPF.assertTrue("Property was violated", !stream.toString().contains(FORECAST_REACHED));
+		}
+	}
+	
+	/**
+	 * Tests that a forecast violation occurs when the state space is far too large for the time budget
+	 */
+	@Test
+	public void testForecastViolation() {
+		resetProperties();
+		PROPERTIES[4] = "+budget.forecast=true";
+		PROPERTIES[5] = "+budget.forecast_interval=1";
+		PROPERTIES[6] = "+budget.forecast_abort_factor=0.01";
+		PROPERTIES[7] = "+budget.max_time=" + MAX_TIME;
+		
+		PrintStream out = null;
+		ByteArrayOutputStream stream = null;
+		
+		if (!TestJPF.isJPFRun()) {
+			out = System.out;
+			stream = new ByteArrayOutputStream();
+			System.setOut(new PrintStream(stream));
+		}
+		
+		if (this.verifyNoPropertyViolation(PROPERTIES)) {
+			// the choices are kept, so these are a million states and the forecast runs once the first hundred are found
+			int value = 0;
+			for (int i = 0; i < 6; i++) {
+				value = 10 * value + Verify.getInt(0, 9);
+			}
+			System.out.println(value);
+		} else {
+			System.setOut(out);
+			TestJPF.assertTrue("Property was not violated", stream.toString().contains(FORECAST_REACHED));
+			TestJPF.assertTrue("Search ran out of time instead", !stream.toString().contains(MAX_TIME_REACHED));
+		}
+	}
+	
+	/**
+	 * Tests that reaching a soft limit is reported but doesn't stop the search
+	 */
+	@Test
+	public void testSoftLimitNoViolation() {
+		resetProperties();
+		PROPERTIES[4] = "+budget.max_insn=" + (100 * MANY_INSTRUCTIONS);
+		PROPERTIES[5] = "+budget.max_insn.soft=1%";
+		PROPERTIES[6] = "+budget.check_interval=" + FEW_INSTRUCTIONS;
+		PROPERTIES[7] = "+budget.soft_action=log,stats";
+		
+		PrintStream out = null;
+		ByteArrayOutputStream stream = null;
+		
+		if (!TestJPF.isJPFRun()) {
+			out = System.out;
+			stream = new ByteArrayOutputStream();
+			System.setOut(new PrintStream(stream));
+		}
+		
+		if (this.verifyNoPropertyViolation(PROPERTIES)) {
+			for (int i = 0; i <= MANY_INSTRUCTIONS; i++);
+		} else {
+			System.setOut(out);
+			TestJPF.assertTrue("Soft limit stopped the search", !stream.toString().contains(MAX_INSTRUCTION_REACHED));
+		}
+	}
+	
+	/**
+	 * Tests that the search frontier is written once a budget stops the search
+	 */
+	@Test
+	public void testCheckpointWritten() {
+		resetProperties();
+		File checkpoint = new File("budget_test.checkpoint");
+		PROPERTIES[4] = "+budget.max_state=" + MAX_STATE;
+		PROPERTIES[5] = "+budget.checkpoint_file=" + checkpoint.getPath();
+		
+		if (!TestJPF.isJPFRun()) {
+			checkpoint.delete();
+		}
+		
+		if (this.verifyNoPropertyViolation(PROPERTIES)) {
+			makeStates(MAX_STATE * 2);
+		} else {
+			TestJPF.assertTrue("Checkpoint was not written", checkpoint.length() > 0);
+			checkpoint.delete();
+		}
+	}
+	
+	/**
+	 * Tests that a search resumed from the checkpoint of a search stopped by a budget explores the end states
+	 * the stopped search didn't reach, and none of the ones it did reach except the one it was stopped in
+	 */
+	@Test
+	public void testResumeFromCheckpoint() {
+		resetProperties();
+		File checkpoint = new File("budget_test_resume.checkpoint");
+		PROPERTIES[4] = "+budget.max_state=" + (2 * MAX_STATE);
+		PROPERTIES[5] = "+budget.checkpoint_file=" + checkpoint.getPath();
+		
+		PrintStream out = null;
+		ByteArrayOutputStream stream = null;
+		
+		if (!TestJPF.isJPFRun()) {
+			checkpoint.delete();
+			out = System.out;
+			stream = new ByteArrayOutputStream();
+			System.setOut(new PrintStream(stream));
+		}
+		
+		if (this.verifyNoPropertyViolation(PROPERTIES)) {
+			int value = 10 * Verify.getInt(0, 3) + Verify.getInt(0, 3);
+			System.out.println(END_STATE_VALUE + value);
+		} else {
+			Set<String> stopped = getEndStateValues(stream.toString());
+			TestJPF.assertTrue("Search was not stopped", stream.toString().contains(MAX_STATES_REACHED));
+			
+			resetProperties();
+			PROPERTIES[4] = "+budget.resume_from=" + checkpoint.getPath();
+			stream = new ByteArrayOutputStream();
+			System.setOut(new PrintStream(stream));
+			
+			if (this.verifyNoPropertyViolation(PROPERTIES)) {
+				// never reached, under JPF the first verifyNoPropertyViolation runs the workload
+			} else {
+				System.setOut(out);
+				Set<String> resumed = getEndStateValues(stream.toString());
+				checkpoint.delete();
+				
+				Set<String> again = new HashSet<String>(resumed);
+				again.retainAll(stopped);
+				TestJPF.assertTrue("Resumed search explored the explored end states again", again.size() <= 1);
+				
+				Set<String> all = new HashSet<String>(resumed);
+				all.addAll(stopped);
+				TestJPF.assertTrue("Resumed search didn't explore the rest", all.size() == 16);
+			}
+		}
+	}
+	
+	/**
+	 * Returns the values printed in the end states of a search
+	 * @param output Output of the search
+	 */
+	private static Set<String> getEndStateValues(String output) {
+		Set<String> values = new HashSet<String>();
+		Matcher matcher = Pattern.compile(END_STATE_VALUE + "(\\d+)").matcher(output);
+		while (matcher.find()) {
+			values.add(matcher.group(1));
+		}
+		return values;
+	}
+	
+	/**
+	 * Tests that a choice budget violation occurs when a choice generator has more choices than allowed
+	 */
+	@Test
+	public void testMaxChoicesPerCgViolation() {
+		resetProperties();
+		PROPERTIES[4] = "+budget.max_choices_per_cg.boolean=1";
+		
+		PrintStream out = null;
+		ByteArrayOutputStream stream = null;
+		
+		if (!TestJPF.isJPFRun()) {
+			out = System.out;
+			stream = new ByteArrayOutputStream();
+			System.setOut(new PrintStream(stream));
+		}
+		
+		if (this.verifyNoPropertyViolation(PROPERTIES)) {
+			makeStates(MAX_STATE);
+		} else {
+			System.setOut(out);
+			TestJPF.assertTrue("Property was not violated", stream.toString().contains(MAX_CG_CHOICES_REACHED));
+		}
+	}
+	
+	/**
+	 * Tests that pruning the choices of a choice generator doesn't stop the search
+	 */
+	@Test
+	public void testMaxChoicesPerCgPruneNoViolation() {
+		resetProperties();
+		PROPERTIES[4] = "+budget.max_choices_per_cg.boolean=1";
+		PROPERTIES[5] = "+budget.cg_action=prune";
+		
+		PrintStream out = null;
+		ByteArrayOutputStream stream = null;
+		
+		if (!TestJPF.isJPFRun()) {
+			out = System.out;
+			stream = new ByteArrayOutputStream();
+			System.setOut(new PrintStream(stream));
+		}
+		
+		if (this.verifyNoPropertyViolation(PROPERTIES)) {
+			makeStates(MAX_STATE);
+		} else {
+			System.setOut(out);
+			TestJPF.assertTrue("Property was violated", !stream.toString().contains(MAX_CG_CHOICES_REACHED));
+			TestJPF.assertTrue("Pruning not reported", stream.toString().contains("pruning the remaining choices of boolean"));
+		}
+	}
+	
+	/**
+	 * Tests that no new state ratio violation occurs while the search keeps finding new states
+	 */
+	@Test
+	public void testMinNewStateRatioNoViolation() {
+		resetProperties();
+		PROPERTIES[4] = "+budget.min_new_state_ratio=0.5";
+		PROPERTIES[5] = "+budget.new_state_window=" + FEW_INSTRUCTIONS / 10;
+		PROPERTIES[6] = "+budget.revisit_profile=true";
+		
+		PrintStream out = null;
+		ByteArrayOutputStream stream = null;
+		
+		if (!TestJPF.isJPFRun()) {
+			out = System.out;
+			stream = new ByteArrayOutputStream();
+			System.setOut(new PrintStream(stream));
+		}
+		
+		if (this.verifyNoPropertyViolation(PROPERTIES)) {
+			// the choices are kept, so each of the hundred advances reaches a new state and fills the window
+			int value = Verify.getInt(0, 9);
+			value = 10 * value + Verify.getInt(0, 9);
+			System.out.println(value);
+		} else {
+			System.setOut(out);
+			TestJPF.assertTrue("Property was violated", !stream.toString().contains(NEW_STATE_RATIO_REACHED));
+			TestJPF.assertTrue("Window was not filled", stream.toString().contains("over the last " + (FEW_INSTRUCTIONS / 10) + " advances"));
+		}
+	}
+	
+	/**
+	 * Tests that a new state ratio violation occurs when the search mostly revisits states
+	 */
+	@Test
+	public void testMinNewStateRatioViolation() {
+		resetProperties();
+		PROPERTIES[4] = "+budget.min_new_state_ratio=0.5";
+		PROPERTIES[5] = "+budget.new_state_window=6";
+		
+		PrintStream out = null;
+		ByteArrayOutputStream stream = null;
+		
+		if (!TestJPF.isJPFRun()) {
+			out = System.out;
+			stream = new ByteArrayOutputStream();
+			System.setOut(new PrintStream(stream));
+		}
+		
+		if (this.verifyNoPropertyViolation(PROPERTIES)) {
+			// the choices are dropped, so both of them lead to the same state
+			for (int i = 0; i < 5; i++) {
+				Verify.getBoolean();
+			}
+		} else {
+			System.setOut(out);
+			TestJPF.assertTrue("Property was not violated", stream.toString().contains(NEW_STATE_RATIO_REACHED));
+		}
+	}
+	
+	/**
+	 * Tests that a coverage plateau violation occurs when new states don't cover new instructions
+	 */
+	@Test
+	public void testCoveragePlateauViolation() {
+		resetProperties();
+		PROPERTIES[4] = "+budget.coverage_plateau_states=1";
+		PROPERTIES[5] = "+budget.coverage=true";
+		
+		PrintStream out = null;
+		ByteArrayOutputStream stream = null;
+		
+		if (!TestJPF.isJPFRun()) {
+			out = System.out;
+			stream = new ByteArrayOutputStream();
+			System.setOut(new PrintStream(stream));
+		}
+		
+		if (this.verifyNoPropertyViolation(PROPERTIES)) {
+			makeStates(10);
+		} else {
+			System.setOut(out);
+			TestJPF.assertTrue("Property was not violated", stream.toString().contains(COVERAGE_PLATEAU_REACHED));
+		}
+	}
+	
+	/**
+	 * Tests that an allocation violation occurs when the SUT allocates too many objects
+	 */
+	@Test
+	public void testMaxAllocViolation() {
+		resetProperties();
+		PROPERTIES[4] = "+budget.max_alloc=" + FEW_INSTRUCTIONS;
+		
+		PrintStream out = null;
+		ByteArrayOutputStream stream = null;
+		
+		if (!TestJPF.isJPFRun()) {
+			out = System.out;
+			stream = new ByteArrayOutputStream();
+			System.setOut(new PrintStream(stream));
+		}
+		
+		if (this.verifyNoPropertyViolation(PROPERTIES)) {
+			allocate(SOME_INSTRUCTIONS);
+		} else {
+			System.setOut(out);
+			TestJPF.assertTrue("Property was not violated", stream.toString().contains(MAX_ALLOC_REACHED));
+		}
+	}
+	
+	/**
+	 * Tests that no CPU time violation occurs when the search finishes within its CPU time
+	 */
+	@Test
+	public void testMaxCpuTimeNoViolation() {
+		resetProperties();
+		PROPERTIES[4] = "+budget.max_cpu_time=" + MAX_TIME;
+		PROPERTIES[5] = "+budget.max_gc_time=" + MAX_TIME;
+		
+		PrintStream out = null;
+		ByteArrayOutputStream stream = null;
+		
+		if (!TestJPF.isJPFRun()) {
+			out = System.out;
+			stream = new ByteArrayOutputStream();
+			System.setOut(new PrintStream(stream));
+		}
+		
+		if (this.verifyNoPropertyViolation(PROPERTIES)) {
+			basicExecution();
+		} else {
+			System.setOut(out);
+			TestJPF.assertTrue("Property was violated", !stream.toString().contains(MAX_CPU_TIME_REACHED));
+		}
+	}
+	
+	/**
+	 * Tests that a max CPU time violation occurs when the search thread runs longer than a millisecond
+	 */
+	@Test
+	public void testMaxCpuTimeViolation() {
+		resetProperties();
+		PROPERTIES[4] = "+budget.max_cpu_time=1";
+		
+		PrintStream out = null;
+		ByteArrayOutputStream stream = null;
+		
+		if (!TestJPF.isJPFRun()) {
+			out = System.out;
+			stream = new ByteArrayOutputStream();
+			System.setOut(new PrintStream(stream));
+		}
+		
+		if (this.verifyNoPropertyViolation(PROPERTIES)) {
+			for (int i = 0; i <= 100 * MANY_INSTRUCTIONS; i++);
+		} else {
+			System.setOut(out);
+			TestJPF.assertTrue("Property was not violated", stream.toString().contains(MAX_CPU_TIME_REACHED));
+		}
+	}
+	
+	/**
+	 * Tests that a max GC time violation occurs when the search keeps the JVM collecting garbage
+	 */
+	@Test
+	public void testMaxGcTimeViolation() {
+		resetProperties();
+		PROPERTIES[4] = "+budget.max_gc_time=1";
+		
+		PrintStream out = null;
+		ByteArrayOutputStream stream = null;
+		
+		if (!TestJPF.isJPFRun()) {
+			out = System.out;
+			stream = new ByteArrayOutputStream();
+			System.setOut(new PrintStream(stream));
+		}
+		
+		if (this.verifyNoPropertyViolation(PROPERTIES)) {
+			churn(SOME_INSTRUCTIONS);
+		} else {
+			System.setOut(out);
+			TestJPF.assertTrue("Property was not violated", stream.toString().contains(MAX_GC_TIME_REACHED));
+		}
+	}
+	
+	/**
+	 * Tests that a GC overhead violation occurs when a short window holds any real collection
+	 */
+	@Test
+	public void testMaxGcOverheadViolation() {
+		resetProperties();
+		PROPERTIES[4] = "+budget.max_gc_overhead=0.01";
+		PROPERTIES[5] = "+budget.gc_overhead_window=100";
+		
+		PrintStream out = null;
+		ByteArrayOutputStream stream = null;
+		
+		if (!TestJPF.isJPFRun()) {
+			out = System.out;
+			stream = new ByteArrayOutputStream();
+			System.setOut(new PrintStream(stream));
+		}
+		
+		if (this.verifyNoPropertyViolation(PROPERTIES)) {
+			churn(SOME_INSTRUCTIONS);
+		} else {
+			System.setOut(out);
+			TestJPF.assertTrue("Property was not violated", stream.toString().contains(MAX_GC_OVERHEAD_REACHED));
+		}
+	}
+	
+	/**
+	 * Tests that no GC overhead violation occurs on a program that barely allocates
+	 */
+	@Test
+	public void testMaxGcOverheadNoViolation() {
+		resetProperties();
+		PROPERTIES[4] = "+budget.max_gc_overhead=0.99";
+		PROPERTIES[5] = "+budget.gc_overhead_window=1000";
+		
+		PrintStream out = null;
+		ByteArrayOutputStream stream = null;
+		
+		if (!TestJPF.isJPFRun()) {
+			out = System.out;
+			stream = new ByteArrayOutputStream();
+			System.setOut(new PrintStream(stream));
+		}
+		
+		if (this.verifyNoPropertyViolation(PROPERTIES)) {
+			basicExecution();
+		} else {
+			System.setOut(out);
+			TestJPF.assertTrue("Property was violated", !stream.toString().contains(MAX_GC_OVERHEAD_REACHED));
+		}
+	}
+	
+	/**
+	 * Tests that a pool violation occurs when a search uses up the instructions of its budget pool
+	 */
+	@Test
+	public void testPoolViolation() {
+		resetProperties();
+		PROPERTIES[4] = "+budget.pool=test";
+		PROPERTIES[5] = "+budget.pool.max_insn=" + MAX_INSN;
+		PROPERTIES[6] = "+budget.check_interval=" + FEW_INSTRUCTIONS;
+		
+		PrintStream out = null;
+		ByteArrayOutputStream stream = null;
+		
+		if (!TestJPF.isJPFRun()) {
+			out = System.out;
+			stream = new ByteArrayOutputStream();
+			System.setOut(new PrintStream(stream));
+		}
+		
+		if (this.verifyNoPropertyViolation(PROPERTIES)) {
+			for (int i = 0; i <= MANY_INSTRUCTIONS; i++);
+		} else {
+			System.setOut(out);
+			TestJPF.assertTrue("Property was not violated", stream.toString().contains(POOL_REACHED));
+		}
+	}
+	
+	/**
+	 * Tests that two searches in the same pool stopping only when greedy can't use more than the pool,
+	 * also after one of them left it
+	 */
+	@Test
+	public void testPoolGreedyBounded() {
+		if (!TestJPF.isJPFRun()) {
+			BudgetPool first = BudgetPool.join("greedy", 0, MAX_INSN, 0);
+			BudgetPool second = BudgetPool.join("greedy", 0, MAX_INSN, 0);
+			TestJPF.assertTrue("Searches don't share the pool", first == second);
+			
+			// both searching, the pool is exhausted and only the one over its share of 500 stops
+			first.drawInsns(300);
+			second.drawInsns(800);
+			TestJPF.assertTrue("Search within its share was stopped", first.check(300, 0, true, false) == 0);
+			TestJPF.assertTrue("Greedy search was not stopped", second.check(800, 0, true, false) == BudgetPool.INSNS);
+			
+			// the share of the search left is what the greedy one didn't use
+			second.leave(800, 0);
+			TestJPF.assertTrue("Search was not stopped once the pool was exhausted", first.check(300, 0, true, false) == BudgetPool.INSNS);
+			first.leave(300, 0);
+		}
+	}
+	
+	/**
+	 * Tests that a shared budget violation occurs when a search uses up the instructions of the shared file
+	 */
+	@Test
+	public void testSharedFileViolation() {
+		resetProperties();
+		File shared = new File("budget_test.shared");
+		PROPERTIES[4] = "+budget.shared_file=" + shared.getPath();
+		PROPERTIES[5] = "+budget.shared.max_insn=" + MAX_INSN;
+		PROPERTIES[6] = "+budget.check_interval=" + FEW_INSTRUCTIONS;
+		
+		PrintStream out = null;
+		ByteArrayOutputStream stream = null;
+		
+		if (!TestJPF.isJPFRun()) {
+			shared.delete();
+			out = System.out;
+			stream = new ByteArrayOutputStream();
+			System.setOut(new PrintStream(stream));
+		}
+		
+		if (this.verifyNoPropertyViolation(PROPERTIES)) {
+			for (int i = 0; i <= MANY_INSTRUCTIONS; i++);
+		} else {
+			System.setOut(out);
+			shared.delete();
+			TestJPF.assertTrue("Property was not violated", stream.toString().contains(SHARED_REACHED));
+		}
+	}
+	
+	/**
+	 * Tests that a shared budget left behind by a crashed search is reset once it is stale
+	 */
+	@Test
+	public void testSharedFileStaleReset() throws Exception {
+		if (!TestJPF.isJPFRun()) {
+			File file = new File("budget_test_stale.shared");
+			file.delete();
+			
+			// a search that exhausts the budget and crashes without closing the file
+			SharedBudgetFile crashed = SharedBudgetFile.open(file.getPath(), MAX_TIME);
+			crashed.draw(MANY_INSTRUCTIONS, 0, 0, MAX_INSN, 0, 0);
+			TestJPF.assertTrue("Shared budget was not exhausted", crashed.isTerminated());
+			
+			SharedBudgetFile running = SharedBudgetFile.open(file.getPath(), MAX_TIME);
+			TestJPF.assertTrue("Budget in use was reset", running.isTerminated());
+			running.close(0);
+			
+			Thread.sleep(FEW_INSTRUCTIONS);
+			SharedBudgetFile next = SharedBudgetFile.open(file.getPath(), FEW_INSTRUCTIONS / 2);
+			TestJPF.assertTrue("Stale budget was not reset", !next.isTerminated());
+			next.close(0);
+			
+			crashed.close(0);
+			file.delete();
+		}
+	}
+	
+	/**
+	 * Tests that the stack samples are published at the end of the search
+	 */
+	@Test
+	public void testStackSamplesPublished() {
+		resetProperties();
+		PROPERTIES[4] = "+budget.stack_sample_interval=1";
+		PROPERTIES[5] = "+budget.check_interval=" + FEW_INSTRUCTIONS;
+		
+		PrintStream out = null;
+		ByteArrayOutputStream stream = null;
+		
+		if (!TestJPF.isJPFRun()) {
+			out = System.out;
+			stream = new ByteArrayOutputStream();
+			System.setOut(new PrintStream(stream));
+		}
+		
+		if (this.verifyNoPropertyViolation(PROPERTIES)) {
+			for (int i = 0; i <= MANY_INSTRUCTIONS; i++);
+		} else {
+			System.setOut(out);
+			TestJPF.assertTrue("Stack samples were not published", stream.toString().contains("stack samples:"));
+		}
+	}
+	
+	/**
+	 * Tests that the states per depth are published at the end of the search
+	 */
+	@Test
+	public void testDepthHistogramPublished() {
+		resetProperties();
+		PROPERTIES[4] = "+budget.depth_histogram=true";
+		
+		PrintStream out = null;
+		ByteArrayOutputStream stream = null;
+		
+		if (!TestJPF.isJPFRun()) {
+			out = System.out;
+			stream = new ByteArrayOutputStream();
+			System.setOut(new PrintStream(stream));
+		}
+		
+		if (this.verifyNoPropertyViolation(PROPERTIES)) {
+			makeStates(MAX_STATE);
+		} else {
+			System.setOut(out);
+			TestJPF.assertTrue("States per depth were not published", stream.toString().contains("budget states per depth"));
+			TestJPF.assertTrue("Initial state was not counted", Pattern.compile("(?m)^\\s+0\\s+1\\s").matcher(stream.toString()).find());
+		}
+	}
+	
+	/**
+	 * Tests that a transition exceeding its instruction budget is pruned without stopping the search,
+	 * and that the search goes on with the other branch of the choice point before it
+	 */
+	@Test
+	public void testMaxInsnPerTransitionNoViolation() {
+		resetProperties();
+		PROPERTIES[4] = "+budget.max_insn_per_transition=" + FEW_INSTRUCTIONS;
+		PROPERTIES[5] = "+budget.max_insn=" + (100 * MANY_INSTRUCTIONS);
+		
+		PrintStream out = null;
+		ByteArrayOutputStream stream = null;
+		
+		if (!TestJPF.isJPFRun()) {
+			out = System.out;
+			stream = new ByteArrayOutputStream();
+			System.setOut(new PrintStream(stream));
+		}
+		
+		if (this.verifyNoPropertyViolation(PROPERTIES)) {
+			if (!Verify.getBoolean()) {
+				for (int i = 0; i <= MANY_INSTRUCTIONS; i++);
+			} else {
+				System.out.println(PRUNED_BRANCH_EXPLORED);
+			}
+		} else {
+			System.setOut(out);
+			String output = stream.toString();
+			TestJPF.assertTrue("Property was violated", !output.contains(MAX_INSTRUCTION_REACHED));
+			
+			Matcher matcher = Pattern.compile("pruned transitions: (\\d+)").matcher(output);
+			TestJPF.assertTrue("Pruned transitions were not published", matcher.find());
+			TestJPF.assertTrue("Transition was not pruned", Long.parseLong(matcher.group(1)) > 0);
+			TestJPF.assertTrue("Branch after the pruned transition was not explored", output.contains(PRUNED_BRANCH_EXPLORED));
+		}
+	}
+	
+	/**
+	 * Tests that iterative deepening grows the depth limit and stops once a search no longer reaches it
+	 */
+	@Test
+	public void testIterativeDeepeningComplete() {
+		if (!TestJPF.isJPFRun()) {
+			PrintStream out = System.out;
+			ByteArrayOutputStream stream = new ByteArrayOutputStream();
+			System.setOut(new PrintStream(stream));
+			
+			try {
+				BudgetIterativeDeepening.main(new String[] {"+classpath=./bin", "+native_classpath=./bin",
+						"+budget.deepening_start=1", "+budget.deepening_step=1",
+						"+target=" + DeepeningTarget.class.getName()});
+			} finally {
+				System.setOut(out);
+			}
+			
+			String output = stream.toString();
+			TestJPF.assertTrue("Depth limit was not grown", output.contains("searching to depth 2"));
+			TestJPF.assertTrue("Search did not stop after exploring everything", output.contains("complete state space explored"));
+			// the target makes 4 choices, so no search goes much deeper than that
+			TestJPF.assertTrue("Search went on past the state space", !output.contains("searching to depth 10"));
+		}
+	}
+
+	
+	/**
+	 * Tests that iterative deepening stops at the first depth limit with an error and reports the one before it
+	 */
+	@Test
+	public void testIterativeDeepeningError() {
+		if (!TestJPF.isJPFRun()) {
+			PrintStream out = System.out;
+			ByteArrayOutputStream stream = new ByteArrayOutputStream();
+			System.setOut(new PrintStream(stream));
+			
+			try {
+				BudgetIterativeDeepening.main(new String[] {"+classpath=./bin", "+native_classpath=./bin",
+						"+budget.deepening_start=1", "+budget.deepening_step=1",
+						"+target=" + DeepeningErrorTarget.class.getName()});
+			} finally {
+				System.setOut(out);
+			}
+			
+			String output = stream.toString();
+			Matcher error = Pattern.compile("error found within depth (\\d+)").matcher(output);
+			TestJPF.assertTrue("Error was not found", error.find());
+			int errorDepth = Integer.parseInt(error.group(1));
+			TestJPF.assertTrue("Error was found before the third choice", errorDepth >= 3);
+			TestJPF.assertTrue("Search went on after the error", !output.contains("searching to depth " + (errorDepth + 1)));
+			TestJPF.assertTrue("Depth with the error was reported as explored",
+					output.contains("deepest fully explored depth " + (errorDepth - 1)));
+		}
+	}
+
 }
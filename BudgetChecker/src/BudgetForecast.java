@@ -0,0 +1,106 @@
+import gov.nasa.jpf.vm.ChoiceGenerator;
+
+/**
+ * Estimates how much of the state space is left, used by the BudgetChecker
+ * when budget.forecast is set.
+ *
+ * Counts the new states found at every depth to get the average branching
+ * factor per depth, and from that the expected size of a subtree below each
+ * depth. The remaining work is then the unexplored choices of the choice
+ * generators on the current path times the size of the subtrees they lead to.
+ * The time per new state observed so far already includes the cost of
+ * revisits and backtracking, so it turns the remaining states into an ETA.
+ */
+class BudgetForecast {
+
+  private static final int INITIAL_DEPTH = 64;
+
+  // new states found at each depth
+  private long[] statesPerDepth = new long[INITIAL_DEPTH];
+  private int maxDepth;
+
+  private long newStates;
+  private long backtracks;
+
+  // the last estimate
+  private double remainingStates;
+  private long eta;
+
+  /**
+   * Counts a state the search advanced to
+   *
+   * @param depth The depth of the state
+   * @param isNew True if the state wasn't visited before
+   */
+  void stateAdvanced (int depth, boolean isNew) {
+    if (!isNew) {
+      return;
+    }
+
+    if (depth >= statesPerDepth.length) {
+      long[] newCounts = new long[Math.max(statesPerDepth.length * 2, depth + 1)];
+      System.arraycopy(statesPerDepth, 0, newCounts, 0, statesPerDepth.length);
+      statesPerDepth = newCounts;
+    }
+    statesPerDepth[depth]++;
+    if (depth > maxDepth) {
+      maxDepth = depth;
+    }
+    newStates++;
+  }
+
+  void stateBacktracked () {
+    backtracks++;
+  }
+
+  long getNewStates () {
+    return newStates;
+  }
+
+  long getBacktracks () {
+    return backtracks;
+  }
+
+  double getRemainingStates () {
+    return remainingStates;
+  }
+
+  long getETA () {
+    return eta;
+  }
+
+  /**
+   * Updates the estimate of the remaining states and the time needed to explore them
+   *
+   * @param cg The choice generator of the current state
+   * @param depth The depth of the current state
+   * @param elapsed Time the search has run so far [msec]
+   * @return the estimated time to completion [msec]
+   */
+  long update (ChoiceGenerator<?> cg, int depth, long elapsed) {
+    // expected size of the subtree below a state at each depth, from the
+    // branching factor observed between that depth and the next
+    double[] subtree = new double[maxDepth + 2];
+    subtree[maxDepth + 1] = 0;
+    subtree[maxDepth] = 1;
+    for (int d = maxDepth - 1; d >= 0; d--) {
+      double branching = (statesPerDepth[d] > 0) ? (double) statesPerDepth[d + 1] / statesPerDepth[d] : 0;
+      subtree[d] = 1 + branching * subtree[d + 1];
+    }
+
+    // every unexplored choice on the current path leads to another such subtree
+    double remaining = 0;
+    for (int d = depth; cg != null && d >= 0; d--) {
+      int open = cg.getTotalNumberOfChoices() - cg.getProcessedNumberOfChoices();
+      if (open > 0) {
+        remaining += open * subtree[Math.min(d + 1, maxDepth + 1)];
+      }
+      cg = cg.getPreviousChoiceGenerator();
+    }
+    remainingStates = remaining;
+
+    double timePerState = (newStates > 0) ? (double) elapsed / newStates : 0;
+    eta = (long) Math.min(remaining * timePerState, Long.MAX_VALUE);
+    return eta;
+  }
+}
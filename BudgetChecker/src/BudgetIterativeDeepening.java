@@ -0,0 +1,86 @@
+import gov.nasa.jpf.Config;
+import gov.nasa.jpf.JPF;
+
+/**
+ * Iterative deepening driver around the BudgetChecker.
+ *
+ * Runs the search with the depth limit set to budget.deepening_start, then
+ * grows it by budget.deepening_step and searches again, all within the same
+ * JVM, until budget.max_time or budget.max_heap is exhausted, an error is
+ * found or a search no longer reaches its depth limit (in which case the
+ * whole state space was explored). Reports the deepest depth limit that
+ * was fully explored without errors.
+ *
+ * budget.max_time is the time budget of the whole run, every iteration only
+ * gets the time that is left. Each iteration is a new JPF instance, so the
+ * visited states are not shared between iterations, but the warmed up JVM
+ * and the host classes loaded by JPF are.
+ *
+ * Usage: java BudgetIterativeDeepening [JPF arguments or .jpf file]
+ * The configuration should not list BudgetChecker as a listener since the
+ * driver adds it to every iteration itself.
+ */
+public class BudgetIterativeDeepening {
+
+  public static void main (String[] args) {
+    Config conf = JPF.createConfig(args);
+
+    int depth = conf.getInt("budget.deepening_start", 10);
+    int step = Math.max(1, conf.getInt("budget.deepening_step", 10));
+    long maxTime = conf.getDuration("budget.max_time", 0);
+
+    long startTime = System.currentTimeMillis();
+    int exploredDepth = -1;
+    boolean complete = false;
+
+    while (true) {
+      long timeLeft = maxTime - (System.currentTimeMillis() - startTime);
+      if (maxTime > 0 && timeLeft <= 0) {
+        break;
+      }
+
+      conf = JPF.createConfig(args);
+      conf.setProperty("search.depth_limit", Integer.toString(depth));
+      if (maxTime > 0) {
+        conf.setProperty("budget.max_time", Long.toString(timeLeft));
+      }
+
+      JPF jpf = new JPF(conf);
+      BudgetChecker checker = new BudgetChecker(conf, jpf);
+      jpf.addListener(checker);
+
+      System.out.println("iterative deepening: searching to depth " + depth);
+      jpf.run();
+
+      if (checker.isTerminated()) {
+        System.out.println("iterative deepening: stopped at depth " + depth + ", " + checker.getTerminationMessage());
+        break;
+      }
+
+      if (jpf.foundErrors()) {
+        // the depth limit of the previous search is the deepest one without errors
+        System.out.println("iterative deepening: error found within depth " + depth);
+        break;
+      }
+
+      exploredDepth = depth;
+
+      if (checker.getMaxDepthReached() < depth) {
+        // the depth limit was never reached, so there is nothing deeper
+        exploredDepth = checker.getMaxDepthReached();
+        complete = true;
+        break;
+      }
+
+      depth += step;
+    }
+
+    if (complete) {
+      System.out.println("iterative deepening: complete state space explored, max depth " + exploredDepth);
+    } else if (exploredDepth >= 0) {
+      System.out.println("iterative deepening: deepest fully explored depth " + exploredDepth);
+    } else {
+      System.out.println("iterative deepening: no depth limit was fully explored");
+    }
+  }
+}
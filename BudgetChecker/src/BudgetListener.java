@@ -0,0 +1,22 @@
+/**
+ * Callback interface for listeners that want to react to a soft budget
+ * limit of the BudgetChecker being reached, e.g. to free memory or to
+ * reduce the search before the hard limit terminates it.
+ *
+ * Listeners are registered with BudgetChecker.addBudgetListener or through
+ * the budget.soft_listeners option, and are only notified if
+ * budget.soft_action includes notify.
+ */
+public interface BudgetListener {
+
+  /**
+   * Called once when a soft limit is reached
+   *
+   * @param checker The BudgetChecker whose soft limit was reached
+   * @param budget The name of the budget, e.g. "max time"
+   * @param value The current value of the budget
+   * @param softLimit The soft limit that was reached
+   * @param hardLimit The hard limit of the budget, 0 if not set
+   */
+  void softLimitReached (BudgetChecker checker, String budget, long value, long softLimit, long hardLimit);
+}
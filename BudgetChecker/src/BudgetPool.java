@@ -0,0 +1,152 @@
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A budget shared by all BudgetCheckers in the same JVM that name the same
+ * pool through budget.pool, e.g. JPF instances of a swarm running in
+ * parallel threads.
+ *
+ * Instructions and new states are counted in LongAdders, which stripe the
+ * count over several cells so concurrent draws don't contend. The checkers
+ * only draw their instructions every check_interval, and only sum up the
+ * pool at the same time, so the per instruction path never touches it.
+ *
+ * Each member has a fair share of every budget, the part of the pool limit
+ * not used by the members that left divided by the number of members that
+ * are still searching. Once a pool budget is exhausted, the members still
+ * searching used more than the sum of their shares, so at least one of them
+ * is over its share and stops, which bounds the pool even if only the
+ * greedy members stop.
+ */
+class BudgetPool {
+
+  static final int INSNS = 1;
+  static final int STATES = 2;
+  static final int TIME = 3;
+
+  private static final Map<String, BudgetPool> pools = new HashMap<String, BudgetPool>();
+
+  private final String name;
+  private final long maxInsn;
+  private final long maxState;
+  private final long deadline;
+
+  private final LongAdder insns = new LongAdder();
+  private final LongAdder states = new LongAdder();
+  private final AtomicInteger members = new AtomicInteger();
+
+  // usage of the members that left the pool
+  private final LongAdder leftInsns = new LongAdder();
+  private final LongAdder leftStates = new LongAdder();
+
+  private BudgetPool (String name, long maxTime, long maxInsn, long maxState) {
+    this.name = name;
+    this.maxInsn = maxInsn;
+    this.maxState = maxState;
+    this.deadline = (maxTime > 0) ? System.currentTimeMillis() + maxTime : Long.MAX_VALUE;
+  }
+
+  /**
+   * Joins the pool with the given name. The first member creates the pool
+   * with its limits, later members share the existing pool and its limits.
+   * The pool is gone once all members have left.
+   */
+  static BudgetPool join (String name, long maxTime, long maxInsn, long maxState) {
+    synchronized (pools) {
+      BudgetPool pool = pools.get(name);
+      if (pool == null) {
+        pool = new BudgetPool(name, maxTime, maxInsn, maxState);
+        pools.put(name, pool);
+      }
+      pool.members.incrementAndGet();
+      return pool;
+    }
+  }
+
+  /**
+   * Leaves the pool, the remaining members share what is left of the budget
+   *
+   * @param ownInsns Instructions executed by the member, all of them drawn
+   * @param ownStates New states found by the member, all of them drawn
+   */
+  void leave (long ownInsns, long ownStates) {
+    synchronized (pools) {
+      leftInsns.add(ownInsns);
+      leftStates.add(ownStates);
+      if (members.decrementAndGet() == 0) {
+        pools.remove(name);
+      }
+    }
+  }
+
+  String getName () {
+    return name;
+  }
+
+  void drawInsns (long n) {
+    insns.add(n);
+  }
+
+  void drawState () {
+    states.increment();
+  }
+
+  private long share (long max, LongAdder left) {
+    return Math.max(0, max - left.sum()) / Math.max(1, members.get());
+  }
+
+  /**
+   * Checks if a member has to stop.
+   * A member stops once it used more than its fair share, if fairShare is set,
+   * or once a pool budget is exhausted: every member if greedyOnly isn't set,
+   * otherwise only the members that used more than their fair share of it.
+   * Running out of time always stops every member.
+   *
+   * @param ownInsns Instructions executed by the member
+   * @param ownStates New states found by the member
+   * @return the exhausted budget (INSNS, STATES or TIME), 0 if the member can go on
+   */
+  int check (long ownInsns, long ownStates, boolean greedyOnly, boolean fairShare) {
+    if (System.currentTimeMillis() > deadline) {
+      return TIME;
+    }
+
+    if (maxInsn > 0 && isExhausted(ownInsns, insns, leftInsns, maxInsn, greedyOnly, fairShare)) {
+      return INSNS;
+    }
+    if (maxState > 0 && isExhausted(ownStates, states, leftStates, maxState, greedyOnly, fairShare)) {
+      return STATES;
+    }
+
+    return 0;
+  }
+
+  private boolean isExhausted (long own, LongAdder used, LongAdder left, long max, boolean greedyOnly, boolean fairShare) {
+    boolean greedy = own > share(max, left);
+    if (fairShare && greedy) {
+      return true;
+    }
+    if (used.sum() <= max) {
+      return false;
+    }
+    return !greedyOnly || greedy;
+  }
+
+  /**
+   * Describes an exhausted budget for the constraint message
+   */
+  String describe (int budget, long own) {
+    switch (budget) {
+      case INSNS:
+        return "instructions " + insns.sum() + " of " + maxInsn + ", " + own + " by this search (share " + share(maxInsn, leftInsns) + ")";
+      case STATES:
+        return "new states " + states.sum() + " of " + maxState + ", " + own + " by this search (share " + share(maxState, leftStates) + ")";
+      case TIME:
+        return "time limit reached";
+      default:
+        return "";
+    }
+  }
+}
@@ -0,0 +1,160 @@
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+
+/**
+ * Budget consumption over the course of a search, recorded by the
+ * BudgetChecker when budget.record_size is set.
+ *
+ * Samples are kept in a fixed size ring buffer of primitive arrays, so
+ * recording never allocates and only the most recent samples are kept
+ * once the buffer is full.
+ */
+class BudgetTimeSeries {
+
+  private static final String[] COLUMNS = {
+    "time_ms", "insns", "new_states", "state_id", "depth", "heap_bytes"
+  };
+
+  private final long[] time;
+  private final long[] insns;
+  private final int[] newStates;
+  private final int[] stateIds;
+  private final int[] depths;
+  private final long[] heap;
+
+  // index of the next sample and the number of samples kept
+  private int next;
+  private int size;
+
+  /**
+   * @param capacity The number of samples kept
+   */
+  BudgetTimeSeries (int capacity) {
+    time = new long[capacity];
+    insns = new long[capacity];
+    newStates = new int[capacity];
+    stateIds = new int[capacity];
+    depths = new int[capacity];
+    heap = new long[capacity];
+  }
+
+  /**
+   * Records a sample, overwriting the oldest one once the buffer is full
+   */
+  void record (long elapsedTime, long insnCount, int newStateCount, int stateId, int depth, long heapUsed) {
+    int i = next;
+    time[i] = elapsedTime;
+    insns[i] = insnCount;
+    newStates[i] = newStateCount;
+    stateIds[i] = stateId;
+    depths[i] = depth;
+    heap[i] = heapUsed;
+
+    next = (i + 1) % time.length;
+    if (size < time.length) {
+      size++;
+    }
+  }
+
+  int size () {
+    return size;
+  }
+
+  /**
+   * Maps the n-th oldest sample to its index in the arrays
+   */
+  private int index (int n) {
+    int oldest = (size < time.length) ? 0 : next;
+    return (oldest + n) % time.length;
+  }
+
+  /**
+   * Writes the samples to the given file, as JSON if the file name
+   * ends with .json and as CSV otherwise
+   *
+   * @param fileName The file to write
+   * @throws IOException if the file can't be written
+   */
+  void export (String fileName) throws IOException {
+    PrintWriter pw = new PrintWriter(new FileWriter(fileName));
+    try {
+      if (fileName.endsWith(".json")) {
+        writeJSON(pw);
+      } else {
+        writeCSV(pw);
+      }
+    } finally {
+      pw.close();
+    }
+  }
+
+  void writeCSV (PrintWriter pw) {
+    for (int c = 0; c < COLUMNS.length; c++) {
+      pw.print((c > 0) ? "," + COLUMNS[c] : COLUMNS[c]);
+    }
+    pw.println();
+
+    for (int n = 0; n < size; n++) {
+      int i = index(n);
+      pw.println(time[i] + "," + insns[i] + "," + newStates[i] + ","
+                 + stateIds[i] + "," + depths[i] + "," + heap[i]);
+    }
+  }
+
+  void writeJSON (PrintWriter pw) {
+    pw.println("[");
+    for (int n = 0; n < size; n++) {
+      int i = index(n);
+      pw.print("  {\"" + COLUMNS[0] + "\":" + time[i]
+               + ",\"" + COLUMNS[1] + "\":" + insns[i]
+               + ",\"" + COLUMNS[2] + "\":" + newStates[i]
+               + ",\"" + COLUMNS[3] + "\":" + stateIds[i]
+               + ",\"" + COLUMNS[4] + "\":" + depths[i]
+               + ",\"" + COLUMNS[5] + "\":" + heap[i] + "}");
+      pw.println((n < size - 1) ? "," : "");
+    }
+    pw.println("]");
+  }
+
+  /**
+   * Writes up to the given number of evenly spaced samples to the report,
+   * with the instruction and new state rates since the previous row
+   *
+   * @param pw Output of the publisher
+   * @param rows Maximum number of rows
+   */
+  void publish (PrintWriter pw, int rows) {
+    pw.println(String.format("%10s %14s %10s %10s %6s %12s %12s %10s",
+        "time[ms]", "insns", "newStates", "stateId", "depth", "heap[bytes]", "insns/s", "states/s"));
+
+    if (size == 0) {
+      return;
+    }
+
+    int step = Math.max(1, (size + rows - 1) / rows);
+    int prev = -1;
+    for (int n = 0; n < size; n += step) {
+      printRow(pw, prev, index(n));
+      prev = index(n);
+    }
+
+    // always end with the last sample
+    if ((size - 1) % step != 0) {
+      printRow(pw, prev, index(size - 1));
+    }
+  }
+
+  private void printRow (PrintWriter pw, int prev, int i) {
+    long insnRate = 0;
+    long stateRate = 0;
+    if (prev >= 0 && time[i] > time[prev]) {
+      long dt = time[i] - time[prev];
+      insnRate = (insns[i] - insns[prev]) * 1000 / dt;
+      stateRate = (newStates[i] - newStates[prev]) * 1000L / dt;
+    }
+
+    pw.println(String.format("%10d %14d %10d %10d %6d %12d %12d %10d",
+        time[i], insns[i], newStates[i], stateIds[i], depths[i], heap[i], insnRate, stateRate));
+  }
+}
@@ -0,0 +1,94 @@
+import java.lang.management.MemoryMXBean;
+
+/**
+ * Daemon thread used by the BudgetChecker when budget.watchdog is set.
+ *
+ * Samples the wall clock and the heap every budget.watchdog_period milliseconds
+ * so that the time and heap budgets are enforced independently of how many
+ * instructions JPF executes. Once a budget is exhausted the watchdog publishes
+ * it through the BudgetChecker's volatile flag and stops; the search itself is
+ * terminated by the listener on the next instruction or state.
+ */
+class BudgetWatchdog extends Thread {
+
+  private final BudgetChecker checker;
+
+  // sampling period in milliseconds
+  private final long period;
+
+  private final long startTime;
+  private final long maxTime;
+
+  private final MemoryMXBean memoryBean;
+  private final long startingMemoryUsage;
+  private final long maxHeap;
+
+  // set by stopWatchdog to end the sampling loop
+  private volatile boolean stopped;
+
+  /**
+   * Creates the watchdog for the given listener and budgets.
+   * A maxTime or maxHeap of 0 means the budget is not sampled.
+   *
+   * @param checker The listener to notify once a budget is exhausted
+   * @param period How often the budgets are sampled [msec]
+   * @param startTime Time the budget started [msec]
+   * @param maxTime The time budget [msec]
+   * @param memoryBean Bean used to sample the heap, null if maxHeap is not set
+   * @param startingMemoryUsage Heap usage the heap budget is relative to
+   * @param maxHeap The heap budget [bytes]
+   */
+  BudgetWatchdog (BudgetChecker checker, long period,
+                  long startTime, long maxTime,
+                  MemoryMXBean memoryBean, long startingMemoryUsage, long maxHeap) {
+    super("BudgetWatchdog");
+    setDaemon(true);
+
+    this.checker = checker;
+    this.period = period;
+    this.startTime = startTime;
+    this.maxTime = maxTime;
+    this.memoryBean = memoryBean;
+    this.startingMemoryUsage = startingMemoryUsage;
+    this.maxHeap = maxHeap;
+  }
+
+  /**
+   * Stops sampling. Safe to call more than once.
+   */
+  void stopWatchdog () {
+    stopped = true;
+    interrupt();
+  }
+
+  /**
+   * Samples the time and heap budgets until one of them is exhausted
+   * or the watchdog is stopped.
+   */
+  @Override
+  public void run () {
+    while (!stopped) {
+      if (maxTime > 0) {
+        long duration = System.currentTimeMillis() - startTime;
+        if (duration > maxTime) {
+          checker.budgetExhausted(BudgetChecker.TIME_EXCEEDED, duration);
+          return;
+        }
+      }
+
+      if (maxHeap > 0) {
+        long used = memoryBean.getHeapMemoryUsage().getUsed() - startingMemoryUsage;
+        if (used > maxHeap) {
+          checker.budgetExhausted(BudgetChecker.HEAP_EXCEEDED, used);
+          return;
+        }
+      }
+
+      try {
+        Thread.sleep(period);
+      } catch (InterruptedException x) {
+        // stopWatchdog was called, loop condition takes care of it
+      }
+    }
+  }
+}
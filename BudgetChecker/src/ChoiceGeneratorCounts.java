@@ -0,0 +1,110 @@
+import gov.nasa.jpf.vm.ChoiceGenerator;
+
+import java.io.PrintWriter;
+
+/**
+ * Choice generator counts per category, used by the BudgetChecker for
+ * budget.max_cg and budget.max_choices_per_cg.&lt;type&gt;.
+ *
+ * Choice generators are sorted into a fixed set of categories by what they
+ * choose, so the counts and limits are plain arrays indexed by the category.
+ */
+class ChoiceGeneratorCounts {
+
+  static final int THREAD = 0;
+  static final int BOOLEAN = 1;
+  static final int INT = 2;
+  static final int LONG = 3;
+  static final int DOUBLE = 4;
+  static final int OTHER = 5;
+
+  /**
+   * Names of the categories, as used in budget.max_choices_per_cg.&lt;type&gt;
+   */
+  static final String[] NAMES = { "thread", "boolean", "int", "long", "double", "other" };
+
+  // max choices explored per choice generator of each category, 0 if not limited
+  private final int[] limits = new int[NAMES.length];
+
+  private final long[] registered = new long[NAMES.length];
+  private final long[] choices = new long[NAMES.length];
+  private final long[] pruned = new long[NAMES.length];
+
+  private long total;
+
+  /**
+   * Returns the category of a choice generator
+   */
+  static int getCategory (ChoiceGenerator<?> cg) {
+    if (cg.isSchedulingPoint()) {
+      return THREAD;
+    }
+
+    Class<?> type = cg.getChoiceType();
+    if (type == Boolean.class) {
+      return BOOLEAN;
+    } else if (type == Integer.class) {
+      return INT;
+    } else if (type == Long.class) {
+      return LONG;
+    } else if (type == Double.class || type == Float.class) {
+      return DOUBLE;
+    }
+    return OTHER;
+  }
+
+  void setLimit (int category, int limit) {
+    limits[category] = limit;
+  }
+
+  int getLimit (int category) {
+    return limits[category];
+  }
+
+  /**
+   * Counts a registered choice generator
+   *
+   * @return the number of choice generators registered so far
+   */
+  long registered (int category) {
+    registered[category]++;
+    return ++total;
+  }
+
+  /**
+   * Counts a choice of a choice generator
+   */
+  void advanced (int category) {
+    choices[category]++;
+  }
+
+  /**
+   * Counts the choices of a choice generator that are not explored
+   */
+  void pruned (int category, int count) {
+    if (count > 0) {
+      pruned[category] += count;
+    }
+  }
+
+  long getTotal () {
+    return total;
+  }
+
+  /**
+   * Writes the counts of every category that was seen to the report
+   *
+   * @param pw Output of the publisher
+   * @param max The budget.max_cg limit, 0 if not set
+   */
+  void publish (PrintWriter pw, long max) {
+    pw.println("choice generators:  " + total + ((max > 0) ? " (max " + max + ")" : ""));
+    pw.println(String.format("  %-8s %12s %12s %12s %10s", "type", "cgs", "choices", "pruned", "max"));
+    for (int c = 0; c < NAMES.length; c++) {
+      if (registered[c] > 0 || choices[c] > 0) {
+        pw.println(String.format("  %-8s %12d %12d %12d %10s", NAMES[c], registered[c], choices[c], pruned[c],
+                                 (limits[c] > 0) ? Integer.toString(limits[c]) : "-"));
+      }
+    }
+  }
+}
@@ -0,0 +1,80 @@
+import java.io.PrintWriter;
+
+/**
+ * New states and revisits per search depth, used by the BudgetChecker for
+ * budget.depth_histogram.
+ *
+ * The counts are kept in growable arrays indexed by the depth. The
+ * branching factor of a depth is the number of transitions into the next
+ * depth per new state at this depth, since only new states are expanded.
+ */
+class DepthHistogram {
+
+  private static final int INITIAL_DEPTH = 64;
+
+  private int[] newStates = new int[INITIAL_DEPTH];
+  private long[] revisits = new long[INITIAL_DEPTH];
+  private int maxDepth = -1;
+
+  /**
+   * Counts a state the search advanced to
+   *
+   * @param depth The depth of the state
+   * @param isNew True if the state wasn't visited before
+   */
+  void stateAdvanced (int depth, boolean isNew) {
+    if (depth >= newStates.length) {
+      int size = Math.max(newStates.length * 2, depth + 1);
+      int[] newNewStates = new int[size];
+      System.arraycopy(newStates, 0, newNewStates, 0, newStates.length);
+      newStates = newNewStates;
+
+      long[] newRevisits = new long[size];
+      System.arraycopy(revisits, 0, newRevisits, 0, revisits.length);
+      revisits = newRevisits;
+    }
+    if (depth > maxDepth) {
+      maxDepth = depth;
+    }
+
+    if (isNew) {
+      newStates[depth]++;
+    } else {
+      revisits[depth]++;
+    }
+  }
+
+  /**
+   * @return the average number of transitions out of a new state at the given depth
+   */
+  double getBranchingFactor (int depth) {
+    if (depth >= maxDepth || newStates[depth] == 0) {
+      return 0;
+    }
+    return (double) (newStates[depth + 1] + revisits[depth + 1]) / newStates[depth];
+  }
+
+  /**
+   * Writes the histogram to the report, one row per depth with a bar
+   * scaled to the depth with the most new states
+   *
+   * @param pw Output of the publisher
+   */
+  void publish (PrintWriter pw) {
+    int most = 1;
+    for (int d = 0; d <= maxDepth; d++) {
+      most = Math.max(most, newStates[d]);
+    }
+
+    pw.println(String.format("%6s %10s %10s %9s", "depth", "newStates", "revisits", "branching"));
+    for (int d = 0; d <= maxDepth; d++) {
+      int bar = (int) (40L * newStates[d] / most);
+      StringBuilder sb = new StringBuilder(bar);
+      for (int i = 0; i < bar; i++) {
+        sb.append('#');
+      }
+      pw.println(String.format("%6d %10d %10d %9.2f  %s", d, newStates[d], revisits[d],
+                               getBranchingFactor(d), sb));
+    }
+  }
+}
@@ -0,0 +1,137 @@
+import com.sun.management.GarbageCollectionNotificationInfo;
+import com.sun.management.GcInfo;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.management.ListenerNotFoundException;
+import javax.management.Notification;
+import javax.management.NotificationEmitter;
+import javax.management.NotificationListener;
+import javax.management.openmbean.CompositeData;
+
+/**
+ * Detects GC thrashing, used by the BudgetChecker for budget.max_gc_overhead.
+ *
+ * Listens to the GC notifications of the JVM and keeps the end time and
+ * duration of the recent collections in a ring buffer. After every
+ * collection the share of the window that was spent in GC is computed, and
+ * once it exceeds the limit the checker is told to stop the search. This
+ * runs on the JMX notification thread, so nothing is polled by the search.
+ */
+class GcOverheadMonitor implements NotificationListener {
+
+  // collections kept, more than enough for any sensible window
+  private static final int CAPACITY = 1024;
+
+  private final BudgetChecker checker;
+  private final double maxOverhead;
+  private final long window;
+
+  // end time (JVM uptime) and duration of the recent collections [msec]
+  private final long[] endTimes = new long[CAPACITY];
+  private final long[] durations = new long[CAPACITY];
+  private int next;
+  private int size;
+
+  // uptime when monitoring started, the first window has to be complete
+  private long startUptime;
+  private boolean fired;
+
+  private final List<NotificationEmitter> emitters = new ArrayList<NotificationEmitter>();
+
+  /**
+   * @param checker The listener to notify once the GC overhead is exceeded
+   * @param maxOverhead The highest share of time that may be spent in GC (0..1)
+   * @param window The time the overhead is computed over [msec]
+   */
+  GcOverheadMonitor (BudgetChecker checker, double maxOverhead, long window) {
+    this.checker = checker;
+    this.maxOverhead = maxOverhead;
+    this.window = window;
+  }
+
+  /**
+   * Registers for the GC notifications of all collectors
+   *
+   * @return false if no collector sends notifications
+   */
+  boolean start () {
+    startUptime = ManagementFactory.getRuntimeMXBean().getUptime();
+
+    for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+      if (gc instanceof NotificationEmitter) {
+        NotificationEmitter emitter = (NotificationEmitter) gc;
+        emitter.addNotificationListener(this, null, null);
+        emitters.add(emitter);
+      }
+    }
+    return !emitters.isEmpty();
+  }
+
+  /**
+   * Removes the notification listeners
+   */
+  void stop () {
+    for (NotificationEmitter emitter : emitters) {
+      try {
+        emitter.removeNotificationListener(this);
+      } catch (ListenerNotFoundException x) {
+        // already removed
+      }
+    }
+    emitters.clear();
+  }
+
+  /**
+   * Called by the JVM after every collection
+   */
+  @Override
+  public synchronized void handleNotification (Notification notification, Object handback) {
+    if (fired || !GarbageCollectionNotificationInfo.GARBAGE_COLLECTION_NOTIFICATION.equals(notification.getType())) {
+      return;
+    }
+
+    GarbageCollectionNotificationInfo info = GarbageCollectionNotificationInfo.from((CompositeData) notification.getUserData());
+    GcInfo gcInfo = info.getGcInfo();
+    long end = gcInfo.getEndTime();
+
+    endTimes[next] = end;
+    durations[next] = gcInfo.getDuration();
+    next = (next + 1) % CAPACITY;
+    if (size < CAPACITY) {
+      size++;
+    }
+
+    if (end - startUptime < window) {
+      return;
+    }
+
+    double overhead = (double) getGcTime(end) / window;
+    if (overhead > maxOverhead) {
+      fired = true;
+      checker.budgetExhausted(BudgetChecker.GC_OVERHEAD_EXCEEDED, Math.round(overhead * 100));
+    }
+  }
+
+  /**
+   * Sums the time spent in collections that ended within the window
+   *
+   * @param now The end of the window [msec uptime]
+   */
+  private long getGcTime (long now) {
+    long total = 0;
+    long from = now - window;
+    for (int n = 0, i = next; n < size; n++) {
+      i = (i == 0) ? CAPACITY - 1 : i - 1;
+      if (endTimes[i] <= from) {
+        break;
+      }
+      // only the part of a collection that falls into the window counts
+      total += Math.min(durations[i], endTimes[i] - from);
+    }
+    return total;
+  }
+}
@@ -0,0 +1,176 @@
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryNotificationInfo;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.management.ListenerNotFoundException;
+import javax.management.Notification;
+import javax.management.NotificationEmitter;
+import javax.management.NotificationListener;
+import javax.management.openmbean.CompositeData;
+
+/**
+ * Enforces budget.max_heap through memory pool thresholds, used by the
+ * BudgetChecker when budget.heap_notifications is set.
+ *
+ * Sets the collection usage thresholds of the old generation pools, the
+ * heap pools that support usage thresholds as well (young pools like eden
+ * and survivor spaces don't). The JVM checks them after every GC and
+ * notifies us once one is crossed, so nothing is polled until the budget is
+ * actually exceeded, and only retained memory counts, not garbage that
+ * hasn't been collected yet.
+ *
+ * The budget is the growth of the old generation, since everything the
+ * search keeps ends up there, and not of the whole heap as with polling:
+ * objects that are still young don't count until they are promoted. With
+ * collectors that have a single heap pool that pool is the whole heap.
+ *
+ * The thresholds belong to the JVM, so all checkers in the JVM share them:
+ * every checker registers its own heap budget and the usage of the pools
+ * when it started, the threshold of a pool is the lowest one any checker
+ * needs, and every notification is checked against the budgets of all
+ * checkers. The thresholds are set back to 0 once the last checker left.
+ */
+class HeapThresholdMonitor {
+
+  // the checkers using the thresholds
+  private static final List<HeapThresholdMonitor> monitors = new ArrayList<HeapThresholdMonitor>();
+
+  // the old generation pools, found when the first checker registers
+  private static List<MemoryPoolMXBean> pools;
+
+  private static NotificationEmitter emitter;
+
+  private static final NotificationListener listener = new NotificationListener() {
+    @Override
+    public void handleNotification (Notification notification, Object handback) {
+      if (MemoryNotificationInfo.MEMORY_COLLECTION_THRESHOLD_EXCEEDED.equals(notification.getType())) {
+        collectionThresholdExceeded(MemoryNotificationInfo.from((CompositeData) notification.getUserData()));
+      }
+    }
+  };
+
+  private final BudgetChecker checker;
+  private final long maxHeap;
+
+  // usage of every pool when the checker registered
+  private final long[] startingUsage;
+
+  private HeapThresholdMonitor (BudgetChecker checker, long maxHeap, long[] startingUsage) {
+    this.checker = checker;
+    this.maxHeap = maxHeap;
+    this.startingUsage = startingUsage;
+  }
+
+  /**
+   * Registers the heap budget of a checker and lowers the thresholds if it needs lower ones
+   *
+   * @param checker The listener to notify once its heap budget is exceeded
+   * @param maxHeap The heap budget [bytes]
+   * @return the registration, null if there is no old generation pool with
+   *    collection usage thresholds, in which case the heap has to be polled
+   */
+  static HeapThresholdMonitor start (BudgetChecker checker, long maxHeap) {
+    synchronized (monitors) {
+      if (pools == null) {
+        pools = new ArrayList<MemoryPoolMXBean>();
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+          if (pool.getType() == MemoryType.HEAP && pool.isUsageThresholdSupported()
+              && pool.isCollectionUsageThresholdSupported()) {
+            pools.add(pool);
+          }
+        }
+      }
+      if (pools.isEmpty()) {
+        return null;
+      }
+
+      long[] startingUsage = new long[pools.size()];
+      for (int i = 0; i < startingUsage.length; i++) {
+        startingUsage[i] = pools.get(i).getUsage().getUsed();
+      }
+
+      HeapThresholdMonitor monitor = new HeapThresholdMonitor(checker, maxHeap, startingUsage);
+      monitors.add(monitor);
+      if (emitter == null) {
+        emitter = (NotificationEmitter) ManagementFactory.getMemoryMXBean();
+        emitter.addNotificationListener(listener, null, null);
+      }
+      updateThresholds();
+      return monitor;
+    }
+  }
+
+  /**
+   * Removes the heap budget of this checker. The thresholds are raised to what
+   * the remaining checkers need, or reset once no checker is left.
+   */
+  void stop () {
+    synchronized (monitors) {
+      if (!monitors.remove(this)) {
+        return;
+      }
+
+      if (monitors.isEmpty()) {
+        try {
+          emitter.removeNotificationListener(listener);
+        } catch (ListenerNotFoundException x) {
+          // already removed
+        }
+        emitter = null;
+      }
+      updateThresholds();
+    }
+  }
+
+  /**
+   * Sets the threshold of every pool to the lowest one any checker needs, 0 if there are none
+   */
+  private static void updateThresholds () {
+    for (int i = 0; i < pools.size(); i++) {
+      MemoryPoolMXBean pool = pools.get(i);
+
+      long threshold = Long.MAX_VALUE;
+      for (HeapThresholdMonitor monitor : monitors) {
+        threshold = Math.min(threshold, monitor.startingUsage[i] + monitor.maxHeap);
+      }
+      if (threshold == Long.MAX_VALUE) {
+        threshold = 0;
+      }
+
+      long max = pool.getUsage().getMax();
+      if (max > 0 && threshold > max) {
+        threshold = max;
+      }
+      pool.setCollectionUsageThreshold(threshold);
+    }
+  }
+
+  /**
+   * Called once a pool is over its threshold after a GC, tells every checker
+   * whose budget that exceeds
+   */
+  private static void collectionThresholdExceeded (MemoryNotificationInfo info) {
+    synchronized (monitors) {
+      int index = -1;
+      for (int i = 0; i < pools.size(); i++) {
+        if (pools.get(i).getName().equals(info.getPoolName())) {
+          index = i;
+          break;
+        }
+      }
+      if (index < 0) {
+        return;
+      }
+
+      for (HeapThresholdMonitor monitor : monitors) {
+        long used = info.getUsage().getUsed() - monitor.startingUsage[index];
+        if (used > monitor.maxHeap) {
+          monitor.checker.budgetExhausted(BudgetChecker.HEAP_EXCEEDED, used);
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,138 @@
+import gov.nasa.jpf.vm.Instruction;
+import gov.nasa.jpf.vm.MethodInfo;
+
+import java.io.PrintWriter;
+import java.util.BitSet;
+
+/**
+ * Instruction coverage of the SUT methods, used by the BudgetChecker for
+ * budget.coverage_plateau_states and the coverage report.
+ *
+ * Every method gets a BitSet of its executed instruction indices, sized to
+ * the number of instructions of the method when the method is first seen,
+ * so marking an instruction never allocates afterwards. The bitsets are
+ * kept in an array indexed by the MethodInfo global id, and the bitset of
+ * the last method is remembered since consecutive instructions mostly
+ * belong to the same method.
+ */
+class InsnCoverage {
+
+  private static final int INITIAL_SIZE = 256;
+
+  private BitSet[] bits = new BitSet[INITIAL_SIZE];
+  private MethodInfo[] methods = new MethodInfo[INITIAL_SIZE];
+
+  // highest method id seen so far
+  private int maxId = -1;
+
+  // the method of the last covered instruction and its bitset
+  private MethodInfo lastMethod;
+  private BitSet lastBits;
+
+  private int coveredMethods;
+  private long coveredInsns;
+  private long totalInsns;
+
+  /**
+   * Marks an instruction as executed
+   *
+   * @param executedInsn The instruction that was executed
+   * @return true if the instruction wasn't covered before
+   */
+  boolean cover (Instruction executedInsn) {
+    MethodInfo mi = executedInsn.getMethodInfo();
+    if (mi != lastMethod) {
+      lastBits = bitsOf(mi);
+      lastMethod = mi;
+    }
+
+    int index = executedInsn.getInstructionIndex();
+    if (lastBits.get(index)) {
+      return false;
+    }
+    lastBits.set(index);
+    coveredInsns++;
+    return true;
+  }
+
+  /**
+   * Returns the bitset of the given method, creating it on the first instruction of the method
+   */
+  private BitSet bitsOf (MethodInfo mi) {
+    int id = mi.getGlobalId();
+    if (id >= bits.length) {
+      int size = Math.max(bits.length * 2, id + 1);
+      BitSet[] newBits = new BitSet[size];
+      System.arraycopy(bits, 0, newBits, 0, bits.length);
+      bits = newBits;
+
+      MethodInfo[] newMethods = new MethodInfo[size];
+      System.arraycopy(methods, 0, newMethods, 0, methods.length);
+      methods = newMethods;
+    }
+
+    BitSet b = bits[id];
+    if (b == null) {
+      int n = mi.getNumberOfInstructions();
+      b = new BitSet(n);
+      bits[id] = b;
+      methods[id] = mi;
+      if (id > maxId) {
+        maxId = id;
+      }
+      coveredMethods++;
+      totalInsns += n;
+    }
+    return b;
+  }
+
+  long getCoveredInsns () {
+    return coveredInsns;
+  }
+
+  /**
+   * Writes the coverage summary to the report, listing the n covered
+   * methods with the lowest instruction coverage
+   *
+   * @param pw Output of the publisher
+   * @param n Number of methods to list
+   */
+  void publish (PrintWriter pw, int n) {
+    double percent = (totalInsns > 0) ? (100.0 * coveredInsns / totalInsns) : 0;
+    pw.println("covered methods:    " + coveredMethods);
+    pw.println(String.format("covered insns:      %d of %d (%.1f%%)", coveredInsns, totalInsns, percent));
+
+    // the methods with the lowest coverage, selected by repeated scans since n is small
+    BitSet listed = new BitSet(maxId + 1);
+    int count = 0;
+    for (int k = 0; k < n; k++) {
+      int lowest = -1;
+      double lowestRatio = 1;
+      for (int id = 0; id <= maxId; id++) {
+        if (bits[id] != null && !listed.get(id)) {
+          double ratio = ratio(id);
+          if (ratio < lowestRatio) {
+            lowest = id;
+            lowestRatio = ratio;
+          }
+        }
+      }
+      if (lowest < 0) {
+        break;
+      }
+
+      if (count++ == 0) {
+        pw.println("least covered methods:");
+      }
+      listed.set(lowest);
+      pw.println(String.format("  %5d/%-5d %5.1f%%  %s", bits[lowest].cardinality(),
+                               methods[lowest].getNumberOfInstructions(), 100 * lowestRatio,
+                               methods[lowest].getFullName()));
+    }
+  }
+
+  private double ratio (int id) {
+    int n = methods[id].getNumberOfInstructions();
+    return (n > 0) ? (double) bits[id].cardinality() / n : 1;
+  }
+}
@@ -0,0 +1,135 @@
+import gov.nasa.jpf.vm.MethodInfo;
+
+import java.io.PrintWriter;
+
+/**
+ * Instruction counts per SUT method, used by the BudgetChecker for
+ * budget.max_insn_per_method and the method hotspot report.
+ *
+ * The counts are kept in a primitive open addressing table keyed by the
+ * MethodInfo global id. Since consecutive instructions mostly belong to
+ * the same method, the slot of the last method is remembered so the
+ * common case is a single array increment.
+ */
+class MethodInsnCounts {
+
+  private static final int INITIAL_CAPACITY = 256;
+
+  // method global id + 1, 0 marks an empty slot
+  private int[] keys = new int[INITIAL_CAPACITY];
+  private long[] counts = new long[INITIAL_CAPACITY];
+  private MethodInfo[] methods = new MethodInfo[INITIAL_CAPACITY];
+
+  private int size;
+
+  // the method of the last counted instruction and its slot
+  private MethodInfo lastMethod;
+  private int lastSlot;
+
+  /**
+   * Counts one instruction of the given method.
+   *
+   * @param mi The method of the executed instruction
+   * @return the instruction count of the method
+   */
+  long increment (MethodInfo mi) {
+    if (mi != lastMethod) {
+      lastSlot = slotOf(mi);
+      lastMethod = mi;
+    }
+    return ++counts[lastSlot];
+  }
+
+  /**
+   * Returns the slot of the given method, adding it if it isn't in the table yet
+   */
+  private int slotOf (MethodInfo mi) {
+    int key = mi.getGlobalId() + 1;
+    int mask = keys.length - 1;
+    int slot = hash(key) & mask;
+
+    while (keys[slot] != 0) {
+      if (keys[slot] == key) {
+        return slot;
+      }
+      slot = (slot + 1) & mask;
+    }
+
+    // keep the table at most half full
+    if (2 * (size + 1) > keys.length) {
+      rehash();
+      return slotOf(mi);
+    }
+
+    keys[slot] = key;
+    methods[slot] = mi;
+    size++;
+    return slot;
+  }
+
+  private static int hash (int key) {
+    int h = key * 0x9E3779B9;
+    return h ^ (h >>> 16);
+  }
+
+  private void rehash () {
+    int[] oldKeys = keys;
+    long[] oldCounts = counts;
+    MethodInfo[] oldMethods = methods;
+
+    int capacity = oldKeys.length * 2;
+    keys = new int[capacity];
+    counts = new long[capacity];
+    methods = new MethodInfo[capacity];
+
+    int mask = capacity - 1;
+    for (int i = 0; i < oldKeys.length; i++) {
+      if (oldKeys[i] != 0) {
+        int slot = hash(oldKeys[i]) & mask;
+        while (keys[slot] != 0) {
+          slot = (slot + 1) & mask;
+        }
+        keys[slot] = oldKeys[i];
+        counts[slot] = oldCounts[i];
+        methods[slot] = oldMethods[i];
+      }
+    }
+
+    // slots have moved
+    lastMethod = null;
+  }
+
+  /**
+   * Returns the slots of the n methods with the most instructions,
+   * highest count first
+   */
+  private int[] topSlots (int n) {
+    // only occupied slots have a count
+    return TopCounts.select(counts, keys.length, Math.min(n, size));
+  }
+
+  /**
+   * @return the name of the method with the most instructions, null if nothing was counted
+   */
+  String getHottestMethod () {
+    int[] top = topSlots(1);
+    return (top.length > 0) ? methods[top[0]].getFullName() : null;
+  }
+
+  /**
+   * Writes the n methods with the most instructions to the report
+   *
+   * @param pw Output of the publisher
+   * @param n Number of methods to list
+   * @param totalInsns Total number of instructions, used for the percentage
+   */
+  void publish (PrintWriter pw, int n, long totalInsns) {
+    int[] top = topSlots(n);
+
+    pw.println("top " + top.length + " of " + size + " methods by instructions:");
+    for (int slot : top) {
+      double percent = (totalInsns > 0) ? (100.0 * counts[slot] / totalInsns) : 0;
+      pw.println(String.format("  %12d %5.1f%%  %s", counts[slot], percent, methods[slot].getFullName()));
+    }
+  }
+}
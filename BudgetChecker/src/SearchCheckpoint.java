@@ -0,0 +1,193 @@
+import gov.nasa.jpf.vm.ChoiceGenerator;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Checkpoint of a depth first search, used by the BudgetChecker for
+ * budget.checkpoint_file and budget.resume_from.
+ *
+ * The checkpoint is the choice generator path to the state the search was
+ * in when a budget terminated it. Since the depth first search explores the
+ * choices of every choice generator in order, everything on the left of
+ * that path has been explored, and the unexplored frontier is the path
+ * itself plus everything on its right. A resumed search backtracks right
+ * away from every state on the left of the path, so only the frontier is
+ * explored again.
+ *
+ * For every transition on the path the file holds the choice indices of the
+ * choice generators of that transition (more than one if they are cascaded).
+ * It is a memory mapped file of big endian ints:
+ * magic, version, number of transitions, then per transition the number of
+ * choice generators followed by their choice indices.
+ */
+class SearchCheckpoint {
+
+  private static final int MAGIC = 0x4A504643;
+  private static final int VERSION = 1;
+
+  // the choice indices of every transition on the checkpointed path
+  private final int[][] path;
+
+  // the number of transitions at the start of the current path that are
+  // the same as the checkpointed path
+  private int matched;
+
+  SearchCheckpoint (int[][] path) {
+    this.path = path;
+  }
+
+  /**
+   * Returns the choice indices of the transition that led to the current state,
+   * which are all the choice generators registered in the same state
+   *
+   * @param cg The choice generator of the current state
+   */
+  static int[] transitionChoices (ChoiceGenerator<?> cg) {
+    if (cg == null) {
+      return new int[0];
+    }
+
+    int n = 0;
+    int stateId = cg.getStateId();
+    for (ChoiceGenerator<?> c = cg; c != null && c.getStateId() == stateId; c = c.getPreviousChoiceGenerator()) {
+      n++;
+    }
+
+    int[] choices = new int[n];
+    ChoiceGenerator<?> c = cg;
+    for (int i = n - 1; i >= 0; i--) {
+      choices[i] = c.getProcessedNumberOfChoices() - 1;
+      c = c.getPreviousChoiceGenerator();
+    }
+    return choices;
+  }
+
+  /**
+   * Returns the choice indices of every transition on the path to the current state
+   *
+   * @param cg The choice generator of the current state
+   */
+  static int[][] capture (ChoiceGenerator<?> cg) {
+    int transitions = 0;
+    int stateId = Integer.MIN_VALUE;
+    for (ChoiceGenerator<?> c = cg; c != null; c = c.getPreviousChoiceGenerator()) {
+      if (c.getStateId() != stateId) {
+        stateId = c.getStateId();
+        transitions++;
+      }
+    }
+
+    int[][] path = new int[transitions][];
+    ChoiceGenerator<?> c = cg;
+    for (int t = transitions - 1; t >= 0; t--) {
+      path[t] = transitionChoices(c);
+      for (int i = 0; i < path[t].length; i++) {
+        c = c.getPreviousChoiceGenerator();
+      }
+    }
+    return path;
+  }
+
+  /**
+   * Writes a path to a checkpoint file
+   */
+  static void write (String fileName, int[][] path) throws IOException {
+    int size = 3;
+    for (int[] choices : path) {
+      size += 1 + choices.length;
+    }
+
+    RandomAccessFile file = new RandomAccessFile(fileName, "rw");
+    try {
+      file.setLength(0);
+      MappedByteBuffer buf = file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, 4L * size);
+      buf.putInt(MAGIC);
+      buf.putInt(VERSION);
+      buf.putInt(path.length);
+      for (int[] choices : path) {
+        buf.putInt(choices.length);
+        for (int choice : choices) {
+          buf.putInt(choice);
+        }
+      }
+      buf.force();
+    } finally {
+      file.close();
+    }
+  }
+
+  /**
+   * Reads a checkpoint file
+   *
+   * @throws IOException if the file can't be read or isn't a checkpoint
+   */
+  static SearchCheckpoint read (String fileName) throws IOException {
+    RandomAccessFile file = new RandomAccessFile(fileName, "r");
+    try {
+      MappedByteBuffer buf = file.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, file.length());
+      if (buf.remaining() < 12 || buf.getInt() != MAGIC || buf.getInt() != VERSION) {
+        throw new IOException("not a search checkpoint: " + fileName);
+      }
+
+      int[][] path = new int[buf.getInt()][];
+      for (int t = 0; t < path.length; t++) {
+        path[t] = new int[buf.getInt()];
+        for (int i = 0; i < path[t].length; i++) {
+          path[t][i] = buf.getInt();
+        }
+      }
+      return new SearchCheckpoint(path);
+    } finally {
+      file.close();
+    }
+  }
+
+  int getLength () {
+    return path.length;
+  }
+
+  /**
+   * Checks if the transition into a new state is on the left of the
+   * checkpointed path, i.e. was already explored before the checkpoint
+   *
+   * @param transition Index of the transition on the current path (depth - 1)
+   * @param cg The choice generator of the new state
+   * @return true if the search should backtrack right away
+   */
+  boolean isExplored (int transition, ChoiceGenerator<?> cg) {
+    if (transition != matched || transition >= path.length) {
+      // the current path already left the checkpointed one
+      return false;
+    }
+
+    int cmp = compare(transitionChoices(cg), path[transition]);
+    if (cmp == 0) {
+      matched = transition + 1;
+    }
+    return cmp < 0;
+  }
+
+  /**
+   * Updates the matched part of the path after a backtrack
+   *
+   * @param depth The depth of the state the search backtracked to
+   */
+  void backtracked (int depth) {
+    if (depth < matched) {
+      matched = depth;
+    }
+  }
+
+  private static int compare (int[] a, int[] b) {
+    int n = Math.min(a.length, b.length);
+    for (int i = 0; i < n; i++) {
+      if (a[i] != b[i]) {
+        return (a[i] < b[i]) ? -1 : 1;
+      }
+    }
+    return a.length - b.length;
+  }
+}
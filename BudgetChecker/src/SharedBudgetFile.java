@@ -0,0 +1,208 @@
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+
+/**
+ * A budget shared by searches in separate JVM processes on the same machine,
+ * used by the BudgetChecker for budget.shared_file.
+ *
+ * The budget is a small memory mapped file of fixed layout longs:
+ * magic and version, a termination flag, the instructions, new states and
+ * heap bytes used by all processes, the number of processes using the file
+ * and the time of the last update.
+ * The heap counter holds the sum of the heap used by every process, each
+ * process adds the change of its own heap since its last draw.
+ *
+ * Every draw updates the counters under a lock on the file, so the updates
+ * of all processes are atomic. The searches only draw every check_interval
+ * instructions, which keeps the cost of the lock off the per instruction path.
+ * Reading the termination flag doesn't need the lock.
+ *
+ * The first process that opens the file while no other process is using it
+ * resets the counters. A process that crashed never leaves the file, so the
+ * counters are reset as well once nobody updated them for the stale time,
+ * since the processes that are searching draw far more often than that.
+ */
+class SharedBudgetFile {
+
+  static final int INSNS = 1;
+  static final int STATES = 2;
+  static final int HEAP = 3;
+  static final int TERMINATED = 4;
+
+  private static final long MAGIC = 0x4A50464200000002L;
+
+  // offsets of the fields
+  private static final int MAGIC_OFFSET = 0;
+  private static final int TERMINATED_OFFSET = 8;
+  private static final int INSNS_OFFSET = 16;
+  private static final int STATES_OFFSET = 24;
+  private static final int HEAP_OFFSET = 32;
+  private static final int MEMBERS_OFFSET = 40;
+  private static final int UPDATED_OFFSET = 48;
+  private static final int SIZE = 56;
+
+  // a file can only be locked once per JVM, so draws of searches within
+  // the same JVM are serialized here first
+  private static final Object jvmLock = new Object();
+
+  private final String fileName;
+  private final RandomAccessFile file;
+  private final FileChannel channel;
+  private final MappedByteBuffer buf;
+
+  private SharedBudgetFile (String fileName, RandomAccessFile file) throws IOException {
+    this.fileName = fileName;
+    this.file = file;
+    this.channel = file.getChannel();
+    this.buf = channel.map(FileChannel.MapMode.READ_WRITE, 0, SIZE);
+  }
+
+  /**
+   * Opens the shared budget file, creating it if it doesn't exist
+   *
+   * @param staleTime Time without updates after which the processes using the file
+   *    are taken to have crashed [msec]
+   * @throws IOException if the file can't be opened or mapped
+   */
+  static SharedBudgetFile open (String fileName, long staleTime) throws IOException {
+    RandomAccessFile file = new RandomAccessFile(fileName, "rw");
+    SharedBudgetFile shared;
+    try {
+      shared = new SharedBudgetFile(fileName, file);
+    } catch (IOException x) {
+      file.close();
+      throw x;
+    }
+
+    synchronized (jvmLock) {
+      FileLock lock = shared.channel.lock(0, SIZE, false);
+      try {
+        MappedByteBuffer buf = shared.buf;
+        long now = System.currentTimeMillis();
+        if (buf.getLong(MAGIC_OFFSET) != MAGIC || buf.getLong(MEMBERS_OFFSET) <= 0
+            || now - buf.getLong(UPDATED_OFFSET) > staleTime) {
+          // nobody else is using the file anymore, start a new budget
+          if (buf.getLong(MAGIC_OFFSET) == MAGIC && buf.getLong(MEMBERS_OFFSET) > 0) {
+            BudgetChecker.log.warning("shared budget " + fileName + " not updated for " + (now - buf.getLong(UPDATED_OFFSET))
+                                      + " msec, resetting it");
+          }
+          for (int offset = 0; offset < SIZE; offset += 8) {
+            buf.putLong(offset, 0);
+          }
+          buf.putLong(MAGIC_OFFSET, MAGIC);
+        }
+        buf.putLong(MEMBERS_OFFSET, buf.getLong(MEMBERS_OFFSET) + 1);
+        buf.putLong(UPDATED_OFFSET, now);
+      } finally {
+        lock.release();
+      }
+    }
+    return shared;
+  }
+
+  String getFileName () {
+    return fileName;
+  }
+
+  /**
+   * @return true once a process found a shared budget exhausted
+   */
+  boolean isTerminated () {
+    return buf.getLong(TERMINATED_OFFSET) != 0;
+  }
+
+  /**
+   * Adds the usage of this process since its last draw and checks the shared budgets.
+   * If one is exhausted, the termination flag is set so all other processes stop as well.
+   *
+   * @param insns Instructions executed since the last draw
+   * @param states New states found since the last draw
+   * @param heap Change of the heap used since the last draw [bytes]
+   * @param maxInsn The shared instruction budget, 0 if not set
+   * @param maxState The shared new state budget, 0 if not set
+   * @param maxHeap The shared heap budget, 0 if not set
+   * @return the exhausted budget (INSNS, STATES, HEAP or TERMINATED if another process
+   *    found one exhausted), 0 if the search can go on
+   * @throws IOException if the file can't be locked
+   */
+  int draw (long insns, long states, long heap, long maxInsn, long maxState, long maxHeap) throws IOException {
+    synchronized (jvmLock) {
+      FileLock lock = channel.lock(0, SIZE, false);
+      try {
+        if (buf.getLong(TERMINATED_OFFSET) != 0) {
+          return TERMINATED;
+        }
+
+        buf.putLong(UPDATED_OFFSET, System.currentTimeMillis());
+
+        long totalInsns = add(INSNS_OFFSET, insns);
+        long totalStates = add(STATES_OFFSET, states);
+        long totalHeap = add(HEAP_OFFSET, heap);
+
+        int exhausted = 0;
+        if (maxInsn > 0 && totalInsns > maxInsn) {
+          exhausted = INSNS;
+        } else if (maxState > 0 && totalStates > maxState) {
+          exhausted = STATES;
+        } else if (maxHeap > 0 && totalHeap > maxHeap) {
+          exhausted = HEAP;
+        }
+
+        if (exhausted != 0) {
+          buf.putLong(TERMINATED_OFFSET, exhausted);
+        }
+        return exhausted;
+      } finally {
+        lock.release();
+      }
+    }
+  }
+
+  private long add (int offset, long value) {
+    long total = buf.getLong(offset) + value;
+    buf.putLong(offset, total);
+    return total;
+  }
+
+  /**
+   * @return the value of the counter of the given budget, for the constraint message
+   */
+  long get (int budget) {
+    switch (budget) {
+      case INSNS:
+        return buf.getLong(INSNS_OFFSET);
+      case STATES:
+        return buf.getLong(STATES_OFFSET);
+      case HEAP:
+        return buf.getLong(HEAP_OFFSET);
+      default:
+        return buf.getLong(TERMINATED_OFFSET);
+    }
+  }
+
+  /**
+   * Takes the heap of this process out of the shared heap and closes the file
+   *
+   * @param heap The heap this process added to the shared heap [bytes]
+   */
+  void close (long heap) {
+    try {
+      synchronized (jvmLock) {
+        FileLock lock = channel.lock(0, SIZE, false);
+        try {
+          add(HEAP_OFFSET, -heap);
+          add(MEMBERS_OFFSET, -1);
+          buf.force();
+        } finally {
+          lock.release();
+        }
+      }
+      file.close();
+    } catch (IOException x) {
+      BudgetChecker.log.warning("could not close shared budget " + fileName + ": " + x.getMessage());
+    }
+  }
+}
@@ -0,0 +1,78 @@
+import gov.nasa.jpf.JPFConfigException;
+
+/**
+ * The soft limits of the BudgetChecker budgets, set through
+ * budget.max_*.soft either as a percentage of the hard limit or as
+ * an absolute value. Every soft limit is only reported once.
+ *
+ * The budgets are indexed by the constraint constants of the BudgetChecker.
+ */
+class SoftLimits {
+
+  // the last budget that can have a soft limit
+  static final int LAST = BudgetChecker.NEW_STATES_EXCEEDED;
+
+  private final long[] limits = new long[LAST + 1];
+  private final boolean[] reached = new boolean[LAST + 1];
+
+  private boolean empty = true;
+
+  /**
+   * Parses a soft limit
+   *
+   * @param key The option the value was read from, for the error message
+   * @param value The configured value, a percentage ending with % or an absolute value
+   * @param hard The hard limit the percentage refers to, 0 if not set
+   * @param absolute The configured value parsed as an absolute value
+   * @return the soft limit, 0 if it can't be computed
+   * @throws JPFConfigException if the percentage is not a number
+   */
+  static long parse (String key, String value, long hard, long absolute) {
+    value = value.trim();
+    if (value.endsWith("%")) {
+      if (hard <= 0) {
+        return 0;
+      }
+      double percent;
+      try {
+        percent = Double.parseDouble(value.substring(0, value.length() - 1).trim());
+      } catch (NumberFormatException x) {
+        throw new JPFConfigException("illegal " + key + " percentage: " + value);
+      }
+      return (long) (hard * percent / 100);
+    }
+    return absolute;
+  }
+
+  void set (int budget, long limit) {
+    if (limit > 0) {
+      limits[budget] = limit;
+      empty = false;
+    }
+  }
+
+  long get (int budget) {
+    return limits[budget];
+  }
+
+  boolean isSet (int budget) {
+    return limits[budget] > 0;
+  }
+
+  boolean isEmpty () {
+    return empty;
+  }
+
+  /**
+   * Checks a budget against its soft limit
+   *
+   * @return true the first time the value reaches the soft limit, false otherwise
+   */
+  boolean reached (int budget, long value) {
+    if (limits[budget] > 0 && !reached[budget] && value >= limits[budget]) {
+      reached[budget] = true;
+      return true;
+    }
+    return false;
+  }
+}
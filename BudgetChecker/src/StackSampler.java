@@ -0,0 +1,219 @@
+import gov.nasa.jpf.vm.MethodInfo;
+import gov.nasa.jpf.vm.StackFrame;
+import gov.nasa.jpf.vm.ThreadInfo;
+
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+
+/**
+ * Sampling profiler of the SUT call stacks, used by the BudgetChecker for
+ * budget.stack_sample_interval.
+ *
+ * Every sample is the call stack of the thread that is running, from the
+ * outermost to the innermost frame, and is added to a trie of frames whose
+ * nodes count the samples ending in them. The trie lives in primitive
+ * arrays, with the children of a node found through an open addressing
+ * table keyed by the parent node and the method id, so a sample only
+ * allocates when it adds new nodes.
+ *
+ * The samples are written in the collapsed stack format of flame graphs:
+ * one line per stack with the frames separated by ';' and the sample count.
+ */
+class StackSampler {
+
+  private static final int INITIAL_NODES = 256;
+  private static final int INITIAL_DEPTH = 64;
+
+  // node 0 is the root, every other node is a method called from its parent
+  private int[] parents = new int[INITIAL_NODES];
+  private MethodInfo[] methods = new MethodInfo[INITIAL_NODES];
+  private long[] samples = new long[INITIAL_NODES];
+  private int nodes = 1;
+
+  // children table: (parent, method id + 1) -> node, 0 marks an empty slot
+  private long[] childKeys = new long[INITIAL_NODES * 2];
+  private int[] childNodes = new int[INITIAL_NODES * 2];
+
+  // the frames of the stack that is sampled, innermost first
+  private MethodInfo[] stack = new MethodInfo[INITIAL_DEPTH];
+
+  private long totalSamples;
+
+  /**
+   * Adds the current call stack of a thread
+   *
+   * @param threadInfo The thread that is running
+   */
+  void sample (ThreadInfo threadInfo) {
+    int depth = 0;
+    for (StackFrame frame = threadInfo.getTopFrame(); frame != null; frame = frame.getPrevious()) {
+      if (frame.isDirectCallFrame()) {
+        continue;
+      }
+      if (depth == stack.length) {
+        MethodInfo[] newStack = new MethodInfo[stack.length * 2];
+        System.arraycopy(stack, 0, newStack, 0, stack.length);
+        stack = newStack;
+      }
+      stack[depth++] = frame.getMethodInfo();
+    }
+
+    int node = 0;
+    for (int i = depth - 1; i >= 0; i--) {
+      node = childOf(node, stack[i]);
+    }
+    samples[node]++;
+    totalSamples++;
+  }
+
+  long getTotalSamples () {
+    return totalSamples;
+  }
+
+  /**
+   * Returns the child of a node for the given method, adding it if it isn't in the trie yet
+   */
+  private int childOf (int parent, MethodInfo mi) {
+    long key = ((long) parent << 32) | (mi.getGlobalId() + 1);
+    int mask = childKeys.length - 1;
+    int slot = hash(key) & mask;
+
+    while (childKeys[slot] != 0) {
+      if (childKeys[slot] == key) {
+        return childNodes[slot];
+      }
+      slot = (slot + 1) & mask;
+    }
+
+    if (nodes == parents.length) {
+      growNodes();
+    }
+    int node = nodes++;
+    parents[node] = parent;
+    methods[node] = mi;
+
+    childKeys[slot] = key;
+    childNodes[slot] = node;
+
+    // keep the table at most half full
+    if (2 * nodes > childKeys.length) {
+      rehash();
+    }
+    return node;
+  }
+
+  private static int hash (long key) {
+    long h = key * 0x9E3779B97F4A7C15L;
+    return (int) (h ^ (h >>> 32));
+  }
+
+  private void growNodes () {
+    int size = parents.length * 2;
+
+    int[] newParents = new int[size];
+    System.arraycopy(parents, 0, newParents, 0, parents.length);
+    parents = newParents;
+
+    MethodInfo[] newMethods = new MethodInfo[size];
+    System.arraycopy(methods, 0, newMethods, 0, methods.length);
+    methods = newMethods;
+
+    long[] newSamples = new long[size];
+    System.arraycopy(samples, 0, newSamples, 0, samples.length);
+    samples = newSamples;
+  }
+
+  private void rehash () {
+    long[] oldKeys = childKeys;
+    int[] oldNodes = childNodes;
+
+    childKeys = new long[oldKeys.length * 2];
+    childNodes = new int[oldKeys.length * 2];
+
+    int mask = childKeys.length - 1;
+    for (int i = 0; i < oldKeys.length; i++) {
+      if (oldKeys[i] != 0) {
+        int slot = hash(oldKeys[i]) & mask;
+        while (childKeys[slot] != 0) {
+          slot = (slot + 1) & mask;
+        }
+        childKeys[slot] = oldKeys[i];
+        childNodes[slot] = oldNodes[i];
+      }
+    }
+  }
+
+  /**
+   * Returns the collapsed stack of a node, outermost frame first
+   */
+  private String getStack (int node) {
+    StringBuilder sb = new StringBuilder();
+    for (int n = node; n != 0; n = parents[n]) {
+      MethodInfo mi = methods[n];
+      String frame = mi.getClassName() + "." + mi.getName();
+      sb.insert(0, (sb.length() > 0) ? frame + ";" : frame);
+    }
+    return sb.toString();
+  }
+
+  /**
+   * Writes every sampled stack in the collapsed stack format
+   */
+  void writeCollapsed (PrintWriter pw) {
+    for (int node = 1; node < nodes; node++) {
+      if (samples[node] > 0) {
+        pw.println(getStack(node) + " " + samples[node]);
+      }
+    }
+  }
+
+  /**
+   * Writes the samples to the given file in the collapsed stack format
+   *
+   * @param fileName The file to write
+   * @throws IOException if the file can't be written
+   */
+  void export (String fileName) throws IOException {
+    PrintWriter pw = new PrintWriter(new FileWriter(fileName));
+    try {
+      writeCollapsed(pw);
+    } finally {
+      pw.close();
+    }
+  }
+
+  /**
+   * Writes the n stacks with the most samples to the report
+   *
+   * @param pw Output of the publisher
+   * @param n Number of stacks to list
+   */
+  void publish (PrintWriter pw, int n) {
+    pw.println("stack samples:      " + totalSamples);
+
+    // the stacks with the most samples, selected by repeated scans since n is small
+    long below = Long.MAX_VALUE;
+    int listed = 0;
+    while (listed < n) {
+      long most = 0;
+      for (int node = 1; node < nodes; node++) {
+        if (samples[node] < below && samples[node] > most) {
+          most = samples[node];
+        }
+      }
+      if (most == 0) {
+        break;
+      }
+
+      for (int node = 1; node < nodes && listed < n; node++) {
+        if (samples[node] == most) {
+          double percent = 100.0 * most / totalSamples;
+          pw.println(String.format("  %10d %5.1f%%  %s", most, percent, getStack(node)));
+          listed++;
+        }
+      }
+      below = most;
+    }
+  }
+}
@@ -0,0 +1,130 @@
+import java.io.PrintWriter;
+
+/**
+ * Share of new states among the recent state advances and revisit counts
+ * per state, used by the BudgetChecker for budget.min_new_state_ratio.
+ *
+ * Whether each of the last advances led to a new state is kept as one bit
+ * in a ring buffer of longs, together with the number of set bits, so the
+ * ratio is updated in constant time. Revisits are counted in an int[]
+ * indexed by the state id, which grows with the number of states.
+ */
+class StateRevisits {
+
+  private static final int INITIAL_STATES = 1024;
+
+  // one bit per advance within the window, set if the state was new
+  private final long[] window;
+  private final int windowSize;
+
+  // next bit to write, the number of advances recorded (up to windowSize)
+  // and the number of new states among them
+  private int next;
+  private int recorded;
+  private int newInWindow;
+
+  // revisits per state id
+  private int[] revisits = new int[INITIAL_STATES];
+  private int maxId = -1;
+  private long totalRevisits;
+
+  /**
+   * @param windowSize The number of advances the ratio is computed over
+   */
+  StateRevisits (int windowSize) {
+    this.windowSize = windowSize;
+    window = new long[(windowSize + 63) / 64];
+  }
+
+  /**
+   * Records a state advance
+   *
+   * @param stateId The id of the state the search advanced to
+   * @param isNew True if the state wasn't visited before
+   */
+  void stateAdvanced (int stateId, boolean isNew) {
+    int word = next >>> 6;
+    long bit = 1L << next;
+
+    if (recorded == windowSize) {
+      // the oldest advance drops out of the window
+      if ((window[word] & bit) != 0) {
+        newInWindow--;
+      }
+    } else {
+      recorded++;
+    }
+
+    if (isNew) {
+      window[word] |= bit;
+      newInWindow++;
+    } else {
+      window[word] &= ~bit;
+      countRevisit(stateId);
+    }
+
+    if (++next == windowSize) {
+      next = 0;
+    }
+  }
+
+  private void countRevisit (int stateId) {
+    if (stateId < 0) {
+      return;
+    }
+    if (stateId >= revisits.length) {
+      int[] newRevisits = new int[Math.max(revisits.length * 2, stateId + 1)];
+      System.arraycopy(revisits, 0, newRevisits, 0, revisits.length);
+      revisits = newRevisits;
+    }
+    if (stateId > maxId) {
+      maxId = stateId;
+    }
+    revisits[stateId]++;
+    totalRevisits++;
+  }
+
+  /**
+   * @return true once the window holds windowSize advances
+   */
+  boolean isFull () {
+    return recorded == windowSize;
+  }
+
+  int getWindowSize () {
+    return windowSize;
+  }
+
+  /**
+   * @return the share of new states among the advances in the window
+   */
+  double getNewStateRatio () {
+    return (recorded > 0) ? (double) newInWindow / recorded : 1;
+  }
+
+  /**
+   * Returns the ids of the n most revisited states, most revisited first
+   */
+  private int[] topStates (int n) {
+    return TopCounts.select(revisits, maxId + 1, n);
+  }
+
+  /**
+   * Writes the new state ratio and the n most revisited states to the report
+   *
+   * @param pw Output of the publisher
+   * @param n Number of states to list
+   * @param min The budget.min_new_state_ratio limit, 0 if not set
+   */
+  void publish (PrintWriter pw, int n, double min) {
+    pw.println(String.format("new state ratio:    %.3f over the last %d advances", getNewStateRatio(), recorded)
+               + ((min > 0) ? " (min " + min + ")" : ""));
+    pw.println("revisits:           " + totalRevisits);
+
+    int[] top = topStates(n);
+    pw.println("top " + top.length + " revisited states:");
+    for (int id : top) {
+      pw.println(String.format("  %10d %10d", id, revisits[id]));
+    }
+  }
+}
@@ -0,0 +1,110 @@
+import java.io.PrintWriter;
+
+/**
+ * Live object count and byte estimate of the heap of the program under test,
+ * used by the BudgetChecker for budget.max_sut_heap.
+ *
+ * The counts are updated incrementally from the objectCreated and objectReleased
+ * notifications of the VM. Since backtracking restores the heap without any
+ * release notifications, the counts are saved for every depth of the current
+ * path when the state advances and put back when the search backtracks.
+ */
+class SutHeapUsage {
+
+  /**
+   * Estimated size of an object header, added to the size of the fields
+   */
+  static final int OBJECT_HEADER_SIZE = 8;
+
+  private static final int INITIAL_DEPTH = 64;
+
+  private long liveObjects;
+  private long liveBytes;
+
+  // highest values seen during the search
+  private long maxLiveObjects;
+  private long maxLiveBytes;
+
+  // counts of the states on the current path, indexed by depth
+  private long[] pathObjects = new long[INITIAL_DEPTH];
+  private long[] pathBytes = new long[INITIAL_DEPTH];
+
+  /**
+   * Counts a new object
+   *
+   * @param size Size of the object fields in bytes
+   * @return the live bytes after the allocation
+   */
+  long created (int size) {
+    liveObjects++;
+    liveBytes += size + OBJECT_HEADER_SIZE;
+
+    if (liveBytes > maxLiveBytes) {
+      maxLiveBytes = liveBytes;
+    }
+    if (liveObjects > maxLiveObjects) {
+      maxLiveObjects = liveObjects;
+    }
+    return liveBytes;
+  }
+
+  /**
+   * Counts an object that was garbage collected
+   *
+   * @param size Size of the object fields in bytes
+   */
+  void released (int size) {
+    liveObjects--;
+    liveBytes -= size + OBJECT_HEADER_SIZE;
+  }
+
+  /**
+   * Saves the counts for the state at the given depth
+   */
+  void stateAdvanced (int depth) {
+    if (depth >= pathObjects.length) {
+      int size = Math.max(pathObjects.length * 2, depth + 1);
+      long[] newObjects = new long[size];
+      long[] newBytes = new long[size];
+      System.arraycopy(pathObjects, 0, newObjects, 0, pathObjects.length);
+      System.arraycopy(pathBytes, 0, newBytes, 0, pathBytes.length);
+      pathObjects = newObjects;
+      pathBytes = newBytes;
+    }
+
+    pathObjects[depth] = liveObjects;
+    pathBytes[depth] = liveBytes;
+  }
+
+  /**
+   * Puts back the counts of the state at the given depth
+   */
+  void stateBacktracked (int depth) {
+    if (depth >= 0 && depth < pathObjects.length) {
+      liveObjects = pathObjects[depth];
+      liveBytes = pathBytes[depth];
+    }
+  }
+
+  long getLiveObjects () {
+    return liveObjects;
+  }
+
+  long getLiveBytes () {
+    return liveBytes;
+  }
+
+  /**
+   * Writes the current and highest SUT heap usage to the report
+   *
+   * @param pw Output of the publisher
+   * @param max The SUT heap budget in bytes, 0 if not set
+   */
+  void publish (PrintWriter pw, long max) {
+    pw.println("live objects:       " + liveObjects + " (max " + maxLiveObjects + ")");
+    pw.println("live bytes:         " + liveBytes + " (max " + maxLiveBytes + ")");
+    if (max > 0) {
+      pw.println("max SUT heap:       " + max);
+    }
+  }
+}
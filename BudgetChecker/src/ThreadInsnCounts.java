@@ -0,0 +1,99 @@
+import java.io.PrintWriter;
+
+/**
+ * Instruction counts of the SUT threads, used by the BudgetChecker for
+ * budget.max_insn_per_thread.
+ *
+ * The counts are kept in a growable long[] indexed by the ThreadInfo id,
+ * so counting an instruction is an array increment without any boxing or
+ * map lookups.
+ */
+class ThreadInsnCounts {
+
+  private static final int INITIAL_SIZE = 16;
+
+  private long[] counts = new long[INITIAL_SIZE];
+  private String[] names = new String[INITIAL_SIZE];
+
+  // threads that have exceeded their budget
+  private boolean[] exceeded = new boolean[INITIAL_SIZE];
+
+  // highest thread id seen so far
+  private int maxId = -1;
+
+  /**
+   * Counts one instruction for the given thread.
+   *
+   * @param id ThreadInfo id of the thread that executed the instruction
+   * @return the instruction count of the thread
+   */
+  long increment (int id) {
+    if (id >= counts.length) {
+      grow(id);
+    }
+    if (id > maxId) {
+      maxId = id;
+    }
+    return ++counts[id];
+  }
+
+  /**
+   * Records the name of a thread for the report
+   */
+  void setName (int id, String name) {
+    if (id >= names.length) {
+      grow(id);
+    }
+    names[id] = name;
+  }
+
+  /**
+   * Marks a thread as having exceeded its budget
+   */
+  void setExceeded (int id) {
+    if (id >= exceeded.length) {
+      grow(id);
+    }
+    exceeded[id] = true;
+  }
+
+  String getName (int id) {
+    return (id < names.length && names[id] != null) ? names[id] : "thread-" + id;
+  }
+
+  private void grow (int id) {
+    int size = counts.length;
+    while (size <= id) {
+      size *= 2;
+    }
+
+    long[] newCounts = new long[size];
+    System.arraycopy(counts, 0, newCounts, 0, counts.length);
+    counts = newCounts;
+
+    String[] newNames = new String[size];
+    System.arraycopy(names, 0, newNames, 0, names.length);
+    names = newNames;
+
+    boolean[] newExceeded = new boolean[size];
+    System.arraycopy(exceeded, 0, newExceeded, 0, exceeded.length);
+    exceeded = newExceeded;
+  }
+
+  /**
+   * Writes the instruction count of every thread to the report,
+   * marking the ones that exceeded their budget
+   *
+   * @param pw Output of the publisher
+   * @param max The per thread budget
+   */
+  void publish (PrintWriter pw, long max) {
+    pw.println("max instructions per thread: " + max);
+    for (int id = 0; id <= maxId; id++) {
+      if (counts[id] > 0) {
+        pw.print(String.format("  %4d %-30s %12d", id, getName(id), counts[id]));
+        pw.println(exceeded[id] ? "  exceeded" : "");
+      }
+    }
+  }
+}
@@ -0,0 +1,79 @@
+/**
+ * Selects the entries with the highest counts from a count array, used by
+ * the reports of MethodInsnCounts, StateRevisits and AllocCounts.
+ *
+ * The reports only list a handful of entries, so the top entries are kept
+ * in a small sorted array that every count is inserted into, instead of
+ * sorting all of them.
+ */
+class TopCounts {
+
+  private interface Counts {
+    long get (int index);
+  }
+
+  /**
+   * Returns the indices of the n highest non-zero counts, highest count first
+   *
+   * @param counts The counts
+   * @param length Number of entries of counts that are in use
+   * @param n Number of indices to return at most
+   */
+  static int[] select (final long[] counts, int length, int n) {
+    return select(new Counts() {
+      @Override
+      public long get (int index) {
+        return counts[index];
+      }
+    }, length, n);
+  }
+
+  /**
+   * Returns the indices of the n highest non-zero counts, highest count first
+   *
+   * @param counts The counts
+   * @param length Number of entries of counts that are in use
+   * @param n Number of indices to return at most
+   */
+  static int[] select (final int[] counts, int length, int n) {
+    return select(new Counts() {
+      @Override
+      public long get (int index) {
+        return counts[index];
+      }
+    }, length, n);
+  }
+
+  private static int[] select (Counts counts, int length, int n) {
+    int[] top = new int[n];
+    int found = 0;
+
+    for (int i = 0; i < length; i++) {
+      long count = counts.get(i);
+      if (count == 0) {
+        continue;
+      }
+
+      // insertion into the sorted top array
+      int pos = found;
+      while (pos > 0 && counts.get(top[pos - 1]) < count) {
+        pos--;
+      }
+      if (pos < top.length) {
+        int end = Math.min(found, top.length - 1);
+        System.arraycopy(top, pos, top, pos + 1, end - pos);
+        top[pos] = i;
+        if (found < top.length) {
+          found++;
+        }
+      }
+    }
+
+    if (found == top.length) {
+      return top;
+    }
+    int[] result = new int[found];
+    System.arraycopy(top, 0, result, 0, found);
+    return result;
+  }
+}
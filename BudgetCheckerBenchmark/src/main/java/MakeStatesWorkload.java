@@ -0,0 +1,21 @@
+import java.util.Random;
+
+/**
+ * Benchmark workload using the makeStates pattern from BudgetCheckerTest.
+ * Run with cg.enumerate_random=true so every nextBoolean is a choice.
+ */
+public class MakeStatesWorkload {
+
+	private static final int MAX_STATES = 12;
+
+	public static void main(String[] args) {
+		int numberOfStates = 0;
+		Random random = new Random();
+
+		while (numberOfStates < MAX_STATES && random.nextBoolean()) {
+			numberOfStates++;
+		}
+		System.out.println(numberOfStates);
+	}
+
+}
@@ -0,0 +1,26 @@
+/**
+ * Benchmark workload modelled on PointlessThread: a few threads that
+ * spin through an empty loop. Unlike PointlessThread the loop bound is
+ * fixed so every search explores the same state space.
+ */
+public class PointlessThreadWorkload extends Thread {
+
+	private static final int THREADS = 2;
+	private static final int LOOP = 1000;
+
+	public void run() {
+		for(int i = 0; i < LOOP; i++);
+	}
+
+	public static void main(String[] args) throws InterruptedException {
+		Thread[] threads = new Thread[THREADS];
+		for(int i = 0; i < THREADS; i++) {
+			threads[i] = new PointlessThreadWorkload();
+			threads[i].start();
+		}
+		for(int i = 0; i < THREADS; i++) {
+			threads[i].join();
+		}
+	}
+
+}
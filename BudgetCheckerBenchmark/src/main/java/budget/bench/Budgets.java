@@ -0,0 +1,116 @@
+package budget.bench;
+
+import gov.nasa.jpf.Config;
+import gov.nasa.jpf.JPF;
+import gov.nasa.jpf.ListenerAdapter;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Helpers shared by the benchmarks for building BudgetChecker configurations.
+ *
+ * The limits are set high enough that they are never reached, so every
+ * enabled budget is checked but none of them ever terminates the search.
+ */
+final class Budgets {
+
+  // never reached by any benchmark
+  static final String MAX_TIME = "86400000";
+  static final String MAX_HEAP = "1099511627776";
+  static final String MAX_INSN = Long.toString(Long.MAX_VALUE);
+  static final String MAX_STATES = Integer.toString(Integer.MAX_VALUE);
+
+  /**
+   * The budget combinations used as benchmark parameters
+   */
+  static final String NONE = "none";
+  static final String TIME = "time";
+  static final String HEAP = "heap";
+  static final String INSN = "insn";
+  static final String STATE = "state";
+  static final String ALL = "all";
+  static final String WATCHDOG = "watchdog";
+  static final String ADAPTIVE = "adaptive";
+
+  /**
+   * Options that make instructionExecuted or stateAdvanced use the running
+   * thread, the executed instruction or the SUT heap, none of which the
+   * ListenerBenchmark stubs provide
+   */
+  static final String[] NEEDS_RUNNING_VM = {
+    "budget.max_insn_per_thread", "budget.max_insn_per_method", "budget.method_profile",
+    "budget.coverage", "budget.coverage_plateau_states", "budget.max_insn_per_transition",
+    "budget.stack_sample_interval", "budget.max_sut_heap", "budget.resume_from"
+  };
+
+  private Budgets () {
+    // no instances
+  }
+
+  /**
+   * Returns the JPF arguments that enable the given budget combination.
+   *
+   * @param budgets One of the budget combination names above
+   * @param checkInterval Value for budget.check_interval
+   */
+  static List<String> budgetArgs (String budgets, int checkInterval) {
+    List<String> args = new ArrayList<String>();
+    boolean all = ALL.equals(budgets) || WATCHDOG.equals(budgets) || ADAPTIVE.equals(budgets);
+
+    if (all || TIME.equals(budgets)) {
+      args.add("+budget.max_time=" + MAX_TIME);
+    }
+    if (all || HEAP.equals(budgets)) {
+      args.add("+budget.max_heap=" + MAX_HEAP);
+    }
+    if (all || INSN.equals(budgets)) {
+      args.add("+budget.max_insn=" + MAX_INSN);
+    }
+    if (all || STATE.equals(budgets)) {
+      args.add("+budget.max_state=" + MAX_STATES);
+      args.add("+budget.max_depth=" + MAX_STATES);
+      args.add("+budget.max_new_states=" + MAX_STATES);
+    }
+    if (WATCHDOG.equals(budgets)) {
+      args.add("+budget.watchdog=true");
+    }
+    if (ADAPTIVE.equals(budgets)) {
+      args.add("+budget.check_period=10");
+    }
+    args.add("+budget.check_interval=" + checkInterval);
+
+    return args;
+  }
+
+  /**
+   * Fails if the configuration sets an option the stubs can't serve, instead
+   * of letting the listener run into a NullPointerException mid benchmark
+   *
+   * @throws IllegalArgumentException naming the first such option
+   */
+  static void checkStubbed (Config conf) {
+    for (String key : NEEDS_RUNNING_VM) {
+      if (conf.containsKey(key)) {
+        throw new IllegalArgumentException(key + " needs a running VM, it can't be measured against the stubs");
+      }
+    }
+  }
+
+  /**
+   * Creates the BudgetChecker for the given JPF instance. The listener
+   * lives in the default package, so it is loaded by name just like
+   * JPF does for listener=BudgetChecker.
+   */
+  static ListenerAdapter createBudgetChecker (Config conf, JPF jpf) throws Exception {
+    Class<?> cls = Class.forName("BudgetChecker");
+    return (ListenerAdapter) cls.getConstructor(Config.class, JPF.class).newInstance(conf, jpf);
+  }
+
+  /**
+   * Location of the benchmark classes, used as the JPF classpath of the workloads
+   */
+  static String classpath () {
+    return Budgets.class.getProtectionDomain().getCodeSource().getLocation().getPath();
+  }
+}
@@ -0,0 +1,90 @@
+package budget.bench;
+
+import gov.nasa.jpf.Config;
+import gov.nasa.jpf.JPF;
+import gov.nasa.jpf.ListenerAdapter;
+import gov.nasa.jpf.search.Search;
+import gov.nasa.jpf.vm.ThreadInfo;
+import gov.nasa.jpf.vm.VM;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Per-callback cost of the BudgetChecker.
+ *
+ * Calls instructionExecuted and stateAdvanced directly against a StubVM and
+ * StubSearch that are never run, for each budget combination and a range of
+ * budget.check_interval values. Run with -prof gc for the allocation rate.
+ *
+ * The callbacks get no thread and no instruction, and the StubVM has no
+ * current thread, so only budgets that are checked without them can be
+ * measured here, and none of them may fire. Budgets keeps its limits out
+ * of reach and setup rejects the options listed in Budgets.NEEDS_RUNNING_VM.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ListenerBenchmark {
+
+  @Param({ Budgets.NONE, Budgets.TIME, Budgets.HEAP, Budgets.INSN, Budgets.STATE, Budgets.ALL, Budgets.WATCHDOG, Budgets.ADAPTIVE })
+  public String budgets;
+
+  @Param({ "1", "100", "10000" })
+  public int checkInterval;
+
+  private ListenerAdapter listener;
+  private VM vm;
+  private Search search;
+
+  // never dereferenced by the supported budgets, see Budgets.NEEDS_RUNNING_VM
+  private ThreadInfo threadInfo;
+
+  @Setup(Level.Trial)
+  public void setup () throws Exception {
+    List<String> args = Budgets.budgetArgs(budgets, checkInterval);
+    args.add("+vm.class=" + StubVM.class.getName());
+    args.add("+search.class=" + StubSearch.class.getName());
+
+    Config conf = JPF.createConfig(args.toArray(new String[args.size()]));
+    Budgets.checkStubbed(conf);
+    JPF jpf = new JPF(conf);
+
+    vm = jpf.getVM();
+    search = jpf.getSearch();
+    listener = Budgets.createBudgetChecker(conf, jpf);
+    listener.searchStarted(search);
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown () {
+    listener.searchFinished(search);
+  }
+
+  @Benchmark
+  public void instructionExecuted () {
+    listener.instructionExecuted(vm, threadInfo, null, null);
+  }
+
+  @Benchmark
+  public void stateAdvanced () {
+    listener.stateAdvanced(search);
+  }
+}
@@ -0,0 +1,71 @@
+package budget.bench;
+
+import gov.nasa.jpf.Config;
+import gov.nasa.jpf.JPF;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * End to end cost of the BudgetChecker on full JPF searches.
+ *
+ * Runs each workload without the listener ("off") and with the listener
+ * and a budget combination that never fires, so the difference between
+ * the scores is the slowdown the listener adds to a real search.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class SearchBenchmark {
+
+  static final String OFF = "off";
+
+  @Param({ "PointlessThreadWorkload", "MakeStatesWorkload" })
+  public String workload;
+
+  @Param({ OFF, Budgets.NONE, Budgets.ALL, Budgets.WATCHDOG })
+  public String budgets;
+
+  private String[] args;
+
+  @Setup
+  public void setup () {
+    List<String> list = new ArrayList<String>();
+    list.add("+classpath=" + Budgets.classpath());
+    list.add("+cg.enumerate_random=true");
+    list.add("+report.console.start=");
+    list.add("+report.console.finished=");
+
+    if (!OFF.equals(budgets)) {
+      list.add("+listener=BudgetChecker");
+      list.addAll(Budgets.budgetArgs(budgets, 10000));
+    }
+    list.add(workload);
+
+    args = list.toArray(new String[list.size()]);
+  }
+
+  @Benchmark
+  public boolean search () {
+    Config conf = JPF.createConfig(args);
+    JPF jpf = new JPF(conf);
+    jpf.run();
+    return jpf.foundErrors();
+  }
+}
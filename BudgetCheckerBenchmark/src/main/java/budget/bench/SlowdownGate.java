@@ -0,0 +1,58 @@
+package budget.bench;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the SearchBenchmark and fails if the BudgetChecker slows down any
+ * workload by more than the given factor compared to running without it.
+ *
+ * Usage: java -cp benchmarks.jar budget.bench.SlowdownGate [maxSlowdown]
+ * where maxSlowdown defaults to 1.10 (10% slower than without the listener).
+ */
+public class SlowdownGate {
+
+  private static final double DEFAULT_MAX_SLOWDOWN = 1.10;
+
+  public static void main (String[] args) throws RunnerException {
+    double maxSlowdown = (args.length > 0) ? Double.parseDouble(args[0]) : DEFAULT_MAX_SLOWDOWN;
+
+    Options opt = new OptionsBuilder()
+        .include(SearchBenchmark.class.getSimpleName())
+        .build();
+    Collection<RunResult> results = new Runner(opt).run();
+
+    // baseline score of every workload without the listener
+    Map<String, Double> baseline = new HashMap<String, Double>();
+    for (RunResult r : results) {
+      if (SearchBenchmark.OFF.equals(r.getParams().getParam("budgets"))) {
+        baseline.put(r.getParams().getParam("workload"), r.getPrimaryResult().getScore());
+      }
+    }
+
+    boolean failed = false;
+    for (RunResult r : results) {
+      String budgets = r.getParams().getParam("budgets");
+      if (SearchBenchmark.OFF.equals(budgets)) {
+        continue;
+      }
+
+      String workload = r.getParams().getParam("workload");
+      double slowdown = r.getPrimaryResult().getScore() / baseline.get(workload);
+      boolean ok = slowdown <= maxSlowdown;
+      System.out.printf("%-25s %-10s slowdown %.3f %s%n", workload, budgets, slowdown, ok ? "ok" : "FAILED");
+      failed |= !ok;
+    }
+
+    if (failed) {
+      System.exit(1);
+    }
+  }
+}
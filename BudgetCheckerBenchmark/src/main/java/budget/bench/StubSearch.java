@@ -0,0 +1,32 @@
+package budget.bench;
+
+import gov.nasa.jpf.Config;
+import gov.nasa.jpf.search.Search;
+import gov.nasa.jpf.vm.VM;
+
+/**
+ * Search that never runs and always reports a new state at depth 1, so
+ * stateAdvanced takes the path with the state, depth and new state checks.
+ * Installed through search.class.
+ */
+public class StubSearch extends Search {
+
+  public StubSearch (Config conf, VM vm) {
+    super(conf, vm);
+  }
+
+  @Override
+  public void search () {
+    // never run
+  }
+
+  @Override
+  public boolean isNewState () {
+    return true;
+  }
+
+  @Override
+  public int getDepth () {
+    return 1;
+  }
+}
@@ -0,0 +1,36 @@
+package budget.bench;
+
+import gov.nasa.jpf.Config;
+import gov.nasa.jpf.JPF;
+import gov.nasa.jpf.vm.SingleProcessVM;
+import gov.nasa.jpf.vm.ThreadInfo;
+
+/**
+ * VM that is never initialized or run. It only answers the queries the
+ * BudgetChecker makes with fixed values so the listener callbacks can be
+ * measured on their own. Installed through vm.class.
+ */
+public class StubVM extends SingleProcessVM {
+
+  public StubVM (JPF jpf, Config conf) {
+    super(jpf, conf);
+  }
+
+  @Override
+  public int getStateId () {
+    return 1;
+  }
+
+  @Override
+  public boolean isTraceReplay () {
+    return false;
+  }
+
+  // the listener only asks for the current thread once a budget fired,
+  // which the benchmark limits never do, or for the options ListenerBenchmark
+  // rejects through Budgets.checkStubbed
+  @Override
+  public ThreadInfo getCurrentThread () {
+    return null;
+  }
+}